@@ -1,27 +1,38 @@
 package com.adventofcode;
 
+import com.adventofcode.intcode.IntcodeMachine;
+import com.adventofcode.intcode.IntcodePool;
+import com.adventofcode.intcode.IntcodeProgram;
+import com.adventofcode.intcode.IntcodeScheduler;
+import com.adventofcode.intcode.LongChannel;
+import com.adventofcode.intcode.SpscLongChannel;
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalLong;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.LongConsumer;
 import java.util.function.LongSupplier;
 import java.util.function.ToLongFunction;
 import java.util.stream.Collectors;
 import java.util.stream.LongStream;
-import java.util.stream.Stream;
 
 public class Intcode {
+    // Amplifiers of the Day 7 permutations, reset between runs rather than allocated for each one.
+    private static final IntcodePool AMPLIFIERS = new IntcodePool(64);
 
     public static String intcode(String stringCodes) {
         long[] codes = intcode(stringCodes, -1, -1);
@@ -29,65 +40,164 @@ public class Intcode {
     }
 
     public static long[] intcode(String stringCodes, long noun, long verb) {
-        List<Long> memory = Stream.of(stringCodes.split(",")).map(Long::valueOf).collect(Collectors.toList());
+        return intcode(IntcodeProgram.of(stringCodes), noun, verb);
+    }
+
+    public static long[] intcode(IntcodeProgram program, long noun, long verb) {
+        long[] memory = program.copy();
         if (noun > 0 && verb > 0) {
-            memory.set(1, noun);
-            memory.set(2, verb);
+            memory[1] = noun;
+            memory[2] = verb;
         }
         return internalIntcode(memory, () -> 0, n -> {
         });
     }
 
     public static long ioIntcode(String stringCodes, long input) {
-        List<Long> memory = Stream.of(stringCodes.split(",")).map(Long::valueOf).collect(Collectors.toList());
+        long[] memory = IntcodeProgram.of(stringCodes).copy();
         AtomicLong output = new AtomicLong();
         internalIntcode(memory, () -> input, output::set);
         return output.get();
     }
 
     public static long thrusterSignal(String code, List<Long> settings) {
+        return thrusterSignal(IntcodeProgram.of(code), settings);
+    }
+
+    /**
+     * Runs one amplifier per phase setting, each feeding the next and the last one feeding the first, all on the
+     * calling thread.
+     */
+    public static long thrusterSignal(IntcodeProgram program, List<Long> settings) {
+        IntcodeScheduler scheduler = new IntcodeScheduler();
+        IntcodeScheduler.Task[] amplifiers = new IntcodeScheduler.Task[settings.size()];
+        IntcodeMachine[] machines = new IntcodeMachine[settings.size()];
+        AtomicLong result = new AtomicLong(0);
         try {
-            return internalThrusterSignal(code, settings);
-        } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException(e);
+            for (int i = amplifiers.length - 1; i >= 0; i--) {
+                IntcodeScheduler.Task next = i + 1 < amplifiers.length ? amplifiers[i + 1] : null;
+                machines[i] = AMPLIFIERS.acquire(program);
+                amplifiers[i] = scheduler.spawn(machines[i], next != null ? next::send : n -> {
+                    amplifiers[0].send(n);
+                    result.set(n);
+                });
+                amplifiers[i].send(settings.get(i));
+            }
+
+            amplifiers[0].send(0L);
+            scheduler.run();
+            return result.get();
+        } finally {
+            for (IntcodeMachine machine : machines) {
+                if (machine != null) {
+                    AMPLIFIERS.release(program, machine);
+                }
+            }
         }
     }
 
-    private static long internalThrusterSignal(String stringCodes, List<Long> settings) throws ExecutionException, InterruptedException {
-        ExecutorService executorService = Executors.newFixedThreadPool(settings.size());
-        BlockingQueue<Long> queue1 = new LinkedBlockingQueue<>(settings.subList(0, 1));
-        BlockingQueue<Long> queue2 = new LinkedBlockingQueue<>(settings.subList(1, 2));
-        BlockingQueue<Long> queue3 = new LinkedBlockingQueue<>(settings.subList(2, 3));
-        BlockingQueue<Long> queue4 = new LinkedBlockingQueue<>(settings.subList(3, 4));
-        BlockingQueue<Long> queue5 = new LinkedBlockingQueue<>(settings.subList(4, 5));
+    /**
+     * Searches the best phase settings of a chain of amplifiers without feedback loop. The output of the first k
+     * amplifiers only depends on the first k phase settings, so permutations are walked depth first and every prefix
+     * is run once: the sum of n!/(n-k)! machine runs instead of n * n!.
+     */
+    public static ThrusterSearchResult maxChainedThrusterSignal(String program, Long... items) {
+        ChainedSearch search = new ChainedSearch(IntcodeProgram.of(program), items);
+        search.walk(0, 0L);
+        long fullRuns = items.length * Permutations.factorial(items.length);
+        if (search.bestSettings == null) {
+            return new ThrusterSearchResult(Collections.emptyList(), -1L, search.runs, fullRuns - search.runs);
+        }
+        List<Long> settings = Arrays.stream(search.bestSettings).boxed().collect(Collectors.toList());
+        return new ThrusterSearchResult(settings, search.bestSignal, search.runs, fullRuns - search.runs);
+    }
 
-        executorService.submit(() -> {
-            intcode(stringCodes, take(queue1), queue2::offer);
-        });
+    private static final class ChainedSearch {
+        private final IntcodeProgram program;
+        private final Long[] items;
+        private final boolean[] used;
+        private final long[] settings;
+        private long[] bestSettings;
+        private long bestSignal = Long.MIN_VALUE;
+        private long runs;
 
-        executorService.submit(() -> {
-            intcode(stringCodes, take(queue2), queue3::offer);
-        });
+        private ChainedSearch(IntcodeProgram program, Long[] items) {
+            this.program = program;
+            this.items = items;
+            this.used = new boolean[items.length];
+            this.settings = new long[items.length];
+        }
 
-        executorService.submit(() -> {
-            intcode(stringCodes, take(queue3), queue4::offer);
-        });
+        private void walk(int stage, long signal) {
+            if (stage == items.length) {
+                if (signal > bestSignal) {
+                    bestSignal = signal;
+                    bestSettings = settings.clone();
+                }
+                return;
+            }
+            for (int i = 0; i < items.length; i++) {
+                if (!used[i]) {
+                    used[i] = true;
+                    settings[stage] = items[i];
+                    walk(stage + 1, amplify(items[i], signal));
+                    used[i] = false;
+                }
+            }
+        }
 
-        executorService.submit(() -> {
-            intcode(stringCodes, take(queue4), queue5::offer);
-        });
+        private long amplify(long phase, long signal) {
+            runs++;
+            IntcodeMachine machine = AMPLIFIERS.acquire(program);
+            try {
+                machine.input(phase);
+                machine.input(signal);
+                if (machine.run() != IntcodeMachine.State.OUTPUT) {
+                    throw new IllegalStateException("amplifier produced no output");
+                }
+                long output = machine.getOutput();
+                if (machine.run() != IntcodeMachine.State.HALTED) {
+                    throw new IllegalStateException("amplifier expects a feedback loop");
+                }
+                return output;
+            } finally {
+                AMPLIFIERS.release(program, machine);
+            }
+        }
+    }
 
-        Future<Long> future = executorService.submit(() -> {
-            AtomicLong result = new AtomicLong(0);
-            intcode(stringCodes, take(queue5), (n) -> {
-                queue1.offer(n);
-                result.set(n);
-            });
-            return result.get();
-        });
+    public static final class ThrusterSearchResult {
+        private final List<Long> settings;
+        private final long signal;
+        private final long runs;
+        private final long savedRuns;
+
+        private ThrusterSearchResult(List<Long> settings, long signal, long runs, long savedRuns) {
+            this.settings = settings;
+            this.signal = signal;
+            this.runs = runs;
+            this.savedRuns = savedRuns;
+        }
+
+        public List<Long> getSettings() {
+            return settings;
+        }
 
-        queue1.offer(0L);
-        return future.get();
+        public long getSignal() {
+            return signal;
+        }
+
+        public long getRuns() {
+            return runs;
+        }
+
+        public long getSavedRuns() {
+            return savedRuns;
+        }
+
+        public Pair<List<Long>, Long> toPair() {
+            return Pair.of(settings, signal);
+        }
     }
 
     public static LongSupplier take(BlockingQueue<Long> queue) {
@@ -101,184 +211,149 @@ public class Intcode {
     }
 
     public static long[] intcode(String stringCodes, LongSupplier input, LongConsumer output) {
-        List<Long> memory = Stream.of(stringCodes.split(",")).map(Long::valueOf).collect(Collectors.toList());
-        return internalIntcode(memory, input, output);
+        return intcode(IntcodeProgram.of(stringCodes), input, output);
     }
 
-    private static long[] internalIntcode(List<Long> memory, LongSupplier input, LongConsumer output) {
-        int relativeBase = 0;
-        for (int position = 0; position < memory.size(); ) {
-            int[] mode = parseCode(memory.get(position));
-
-            switch (mode[0]) {
-                case 1: {
-                    long value1 = readParameter(memory, mode, relativeBase, position, 1);
-                    long value2 = readParameter(memory, mode, relativeBase, position, 2);
-                    setValue(memory, mode, position, relativeBase, 3, value1 + value2);
-                    position += 4;
-                    break;
-                }
-                case 2: {
-                    long value1 = readParameter(memory, mode, relativeBase, position, 1);
-                    long value2 = readParameter(memory, mode, relativeBase, position, 2);
-                    setValue(memory, mode, position, relativeBase, 3, value1 * value2);
-                    position += 4;
-                    break;
-                }
-                case 3: {
-                    long stackInput = input.getAsLong();
-                    setValue(memory, mode, position, relativeBase, 1, stackInput);
-                    position += 2;
-                    break;
-                }
-                case 4: {
-                    long value1 = readParameter(memory, mode, relativeBase, position, 1);
-                    output.accept(value1);
-                    position += 2;
-                    break;
-                }
-                // Opcode 5 is jump-if-true: if the first parameter is non-zero, it sets the instruction pointer to the
-                // value from the second parameter. Otherwise, it does nothing.
-                case 5: {
-                    long value1 = readParameter(memory, mode, relativeBase, position, 1);
-                    long value2 = readParameter(memory, mode, relativeBase, position, 2);
-                    if (value1 != 0) {
-                        position = (int) value2;
-                    } else {
-                        position += 3;
-                    }
-                    break;
-                }
-                // Opcode 6 is jump-if-false: if the first parameter is zero, it sets the instruction pointer to the
-                // value from the second parameter. Otherwise, it does nothing.
-                case 6: {
-                    long value1 = readParameter(memory, mode, relativeBase, position, 1);
-                    long value2 = readParameter(memory, mode, relativeBase, position, 2);
-                    if (value1 == 0) {
-                        position = (int) value2;
-                    } else {
-                        position += 3;
-                    }
-                    break;
-                }
-                // Opcode 7 is less than: if the first parameter is less than the second parameter, it stores 1 in the
-                // position given by the third parameter. Otherwise, it stores 0.
-                case 7: {
-                    long value1 = readParameter(memory, mode, relativeBase, position, 1);
-                    long value2 = readParameter(memory, mode, relativeBase, position, 2);
-                    setValue(memory, mode, position, relativeBase, 3, value1 < value2 ? 1 : 0);
-                    position += 4;
-                    break;
-                }
-                // Opcode 8 is equals: if the first parameter is equal to the second parameter, it stores 1 in the
-                // position given by the third parameter. Otherwise, it stores 0.
-                case 8: {
-                    long value1 = readParameter(memory, mode, relativeBase, position, 1);
-                    long value2 = readParameter(memory, mode, relativeBase, position, 2);
-                    setValue(memory, mode, position, relativeBase, 3, value1 == value2 ? 1 : 0);
-                    position += 4;
-                    break;
-                }
-                // Opcode 9 adjusts the relative base by the value of its only parameter. The relative base increases
-                // (or decreases, if the value is negative) by the value of the parameter.
-                case 9: {
-                    long value1 = readParameter(memory, mode, relativeBase, position, 1);
-                    relativeBase += value1;
-                    position += 2;
-                    break;
-                }
-                case 99:
-                    return memory.stream().mapToLong(Long::longValue).toArray();
-                default:
-                    throw new IllegalStateException("unknown code (" + mode[0] + ")");
-            }
-        }
-
-        // Arrays.fill(memory, -1);
-        return memory.stream().mapToLong(Long::longValue).toArray();
+    public static long[] intcode(IntcodeProgram program, LongSupplier input, LongConsumer output) {
+        return internalIntcode(program.copy(), input, output);
     }
 
-    private static long readMemory(List<Long> memory, int position) {
-        if (position < memory.size()) {
-            return memory.get(position);
-        } else {
-            return 0L;
-        }
+    private static long[] internalIntcode(long[] memory, LongSupplier input, LongConsumer output) {
+        return new IntcodeMachine(memory).run(input, output);
     }
 
-    private static void setMemory(List<Long> memory, int position, long value) {
-        if (position >= memory.size()) {
-            memory.addAll(Collections.nCopies(position - memory.size() + 1, 0L));
-        }
-        memory.set(position, value);
+    public static Pair<List<Long>, Long> maxThrusterSignal(String program, Long... items) {
+        IntcodeProgram image = IntcodeProgram.of(program);
+        Optional<Pair<List<Long>, Long>> max = Permutations.of(items)
+                .map(settings -> Pair.of(settings, thrusterSignal(image, settings)))
+                .max((o1, o2) -> Comparator.comparingLong((ToLongFunction<Pair<List<Long>, Long>>) Pair::getRight).compare(o1, o2));
+        return max.orElseGet(() -> Pair.of(Collections.emptyList(), -1L));
     }
 
-    private static void setValue(List<Long> memory, int[] mode, int position, int relativeBase, int offset, long value) {
-        switch (mode[offset]) {
-            case 0:
-                setMemory(memory, (int) readMemory(memory, position + offset), value);
-                break;
-            case 1:
-                setMemory(memory, position + offset, value);
-                break;
-            case 2:
-                setMemory(memory, relativeBase + (int) readMemory(memory, position + offset), value);
-                break;
-            default:
-                throw new IllegalStateException("setValue(" + mode[offset] + ")");
+    /**
+     * Same search as {@link #maxThrusterSignal(String, Long...)} spread over a pool of {@code parallelism} threads
+     * that is shut down before returning.
+     */
+    public static Pair<List<Long>, Long> maxThrusterSignal(String program, int parallelism, OptionalLong bound, Long... items) {
+        ExecutorService executorService = Executors.newFixedThreadPool(parallelism);
+        try {
+            return maxThrusterSignal(program, executorService, parallelism, bound, items);
+        } finally {
+            executorService.shutdownNow();
+            try {
+                executorService.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
     }
 
-    private static long readParameter(List<Long> memory, int[] mode, int relativeBase, int position, int offset) {
-        switch (mode[offset]) {
-            case 0:
-                return readMemory(memory, (int) readMemory(memory, position + offset));
-            case 1:
-                return readMemory(memory, position + offset);
-            case 2:
-                return readMemory(memory, relativeBase + (int) readMemory(memory, position + offset));
-            default:
-                throw new IllegalStateException("readParameter(" + mode[offset] + ")");
+    /**
+     * Splits the permutations into {@code tasks} interleaved slices run on the given executor. Without a bound the
+     * result is the one of the serial search, ties going to the first permutation. With a bound, the search stops as
+     * soon as any slice finds a signal reaching it and returns the best signal found so far.
+     */
+    public static Pair<List<Long>, Long> maxThrusterSignal(String program, ExecutorService executorService, int tasks, OptionalLong bound, Long... items) {
+        IntcodeProgram image = IntcodeProgram.of(program);
+        List<Long> itemList = Arrays.asList(items);
+        long count = Permutations.factorial(items.length);
+        AtomicBoolean reached = new AtomicBoolean();
+
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int task = 0; task < tasks; task++) {
+            long first = task;
+            futures.add(executorService.submit(() -> {
+                long[] best = {-1, Long.MIN_VALUE};
+                for (long no = first; no < count && !reached.get(); no += tasks) {
+                    long signal = thrusterSignal(image, Permutations.permutation(no, itemList));
+                    if (signal > best[1]) {
+                        best[0] = no;
+                        best[1] = signal;
+                    }
+                    if (bound.isPresent() && signal >= bound.getAsLong()) {
+                        reached.set(true);
+                    }
+                }
+                return best;
+            }));
         }
-    }
 
-    private static int[] parseCode(long code) {
-        int[] mode = new int[4];
-        int intCode = (int) code;
-        mode[0] = intCode % 100;
-        mode[1] = (intCode / 100) % 10;
-        mode[2] = (intCode / 1000) % 10;
-        mode[3] = (intCode / 10000) % 10;
-        return mode;
-    }
+        long[] best = {-1, Long.MIN_VALUE};
+        try {
+            for (Future<long[]> future : futures) {
+                long[] result = future.get();
+                if (result[1] > best[1] || (result[1] == best[1] && result[0] < best[0])) {
+                    best = result;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            futures.forEach(f -> f.cancel(true));
+        }
 
-    public static Pair<List<Long>, Long> maxThrusterSignal(String program, Long... items) {
-        Optional<Pair<List<Long>, Long>> max = Permutations.of(items)
-                .map(settings -> Pair.of(settings, thrusterSignal(program, settings)))
-                .max((o1, o2) -> Comparator.comparingLong((ToLongFunction<Pair<List<Long>, Long>>) Pair::getRight).compare(o1, o2));
-        return max.orElseGet(() -> Pair.of(Collections.emptyList(), -1L));
+        if (best[0] < 0) {
+            return Pair.of(Collections.emptyList(), -1L);
+        }
+        return Pair.of(Permutations.permutation(best[0], itemList), best[1]);
     }
 
+    /**
+     * Drone driven one move at a time: {@link #action(long)} sends one input and returns the next output. The default
+     * robot runs the program on a background thread, a {@link #synchronous(String)} robot runs it on the caller's
+     * thread until the next output, which saves the thread handoffs.
+     */
     public static class Robot implements AutoCloseable {
         private final ExecutorService executorService;
-        private final BlockingQueue<Long> inputQueue = new LinkedBlockingQueue<>();
-        private final BlockingQueue<Long> outputQueue = new LinkedBlockingQueue<>();
+        private final LongChannel inputChannel;
+        private final LongChannel outputChannel;
+        private final IntcodeMachine machine;
 
         public Robot(String program) {
+            inputChannel = new SpscLongChannel(16);
+            outputChannel = new SpscLongChannel(16);
+            machine = null;
             executorService = Executors.newSingleThreadExecutor();
             executorService.submit(() -> {
-                intcode(program, take(inputQueue), outputQueue::offer);
+                intcode(program, inputChannel, outputChannel);
             });
         }
 
+        private Robot(IntcodeMachine machine) {
+            this.executorService = null;
+            this.inputChannel = null;
+            this.outputChannel = null;
+            this.machine = machine;
+        }
+
+        public static Robot synchronous(String program) {
+            return new Robot(new IntcodeMachine(IntcodeProgram.of(program).copy()));
+        }
+
         public long action(long input) {
-            inputQueue.offer(input);
-            return take(outputQueue).getAsLong();
+            if (machine == null) {
+                inputChannel.put(input);
+                return outputChannel.take();
+            }
+            machine.input(input);
+            switch (machine.run()) {
+                case OUTPUT:
+                    return machine.getOutput();
+                case NEEDS_INPUT:
+                    throw new IllegalStateException("no output for input " + input);
+                default:
+                    throw new IllegalStateException("robot halted");
+            }
         }
 
         @Override
         public void close() {
-            executorService.shutdown();
+            if (executorService != null) {
+                executorService.shutdownNow();
+            }
         }
     }
 }
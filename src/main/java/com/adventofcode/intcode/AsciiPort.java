@@ -0,0 +1,95 @@
+package com.adventofcode.intcode;
+
+import java.nio.ByteBuffer;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+/**
+ * Text console over an {@link IntcodeMachine} for the ASCII programs (Day 17, 21 and 25). Text goes in as whole
+ * strings or buffers straight into the machine's primitive input queue. Output comes back as completed lines,
+ * without their newline, while values outside of ASCII, such as a final score, skip the line buffer and go to their
+ * own consumer.
+ * <p>
+ * The machine runs on the caller's thread, {@link #run()} returns as soon as the program waits for input.
+ */
+public class AsciiPort {
+    private static final long NEW_LINE = '\n';
+
+    private final IntcodeMachine machine;
+    private final Consumer<String> lines;
+    private final LongConsumer values;
+    private final StringBuilder line = new StringBuilder();
+
+    public AsciiPort(IntcodeMachine machine, Consumer<String> lines, LongConsumer values) {
+        this.machine = machine;
+        this.lines = lines;
+        this.values = values;
+    }
+
+    public static AsciiPort of(String program, Consumer<String> lines, LongConsumer values) {
+        return new AsciiPort(new IntcodeMachine(IntcodeProgram.of(program).copy()), lines, values);
+    }
+
+    public IntcodeMachine getMachine() {
+        return machine;
+    }
+
+    public AsciiPort write(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            machine.input(text.charAt(i));
+        }
+        return this;
+    }
+
+    public AsciiPort writeLine(CharSequence text) {
+        write(text);
+        machine.input(NEW_LINE);
+        return this;
+    }
+
+    /**
+     * Writes the remaining bytes of the buffer, one input per byte.
+     */
+    public AsciiPort write(ByteBuffer bytes) {
+        while (bytes.hasRemaining()) {
+            machine.input(bytes.get() & 0xFF);
+        }
+        return this;
+    }
+
+    /**
+     * Runs the program until it waits for input or halts, and returns which. A halting program flushes its last line
+     * even without a newline.
+     */
+    public IntcodeMachine.State run() {
+        while (true) {
+            IntcodeMachine.State state = machine.run();
+            if (state != IntcodeMachine.State.OUTPUT) {
+                if (state == IntcodeMachine.State.HALTED && line.length() > 0) {
+                    flush();
+                }
+                return state;
+            }
+            long value = machine.getOutput();
+            if (value == NEW_LINE) {
+                flush();
+            } else if (value >= 0 && value < 128) {
+                line.append((char) value);
+            } else {
+                values.accept(value);
+            }
+        }
+    }
+
+    /**
+     * Returns the output of the current line so far, typically a prompt.
+     */
+    public String pending() {
+        return line.toString();
+    }
+
+    private void flush() {
+        lines.accept(line.toString());
+        line.setLength(0);
+    }
+}
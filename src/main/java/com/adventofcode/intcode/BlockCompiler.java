@@ -0,0 +1,573 @@
+package com.adventofcode.intcode;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles the basic blocks reachable from a set of seed addresses into a JVM class, one static method per block and a
+ * dispatch loop switching on the instruction pointer. Input, output and halt instructions are left to the interpreter:
+ * the block stops right before them and the address following them starts a new block. Long straight-line code is
+ * cut into blocks of {@value #MAX_BLOCK_INSTRUCTIONS} instructions, so that every method stays small enough to be JIT
+ * compiled. Code the JVM refuses to load anyway is left to the interpreter.
+ * <p>
+ * Each class is defined by a class loader of its own, so that a region evicted from the cache is unloaded, along with
+ * its metaspace, once the last machine running it drops it.
+ * <p>
+ * Parameters are baked into the generated code as constants, so the cells of every compiled instruction are marked in
+ * {@link Memory}. Blocks check {@link Memory#codeModified} after each write and return to the interpreter as soon as
+ * the program has modified itself.
+ */
+final class BlockCompiler {
+    private static final int MAX_BLOCKS = 400;
+    // HotSpot never JIT compiles a method longer than this, in bytes of bytecode.
+    private static final int HUGE_METHOD = 8000;
+    // Cases per dispatch method, about 42 bytes of bytecode each, and instructions per block, at most 68 bytes each:
+    // both kinds of method stay under the huge method limit.
+    static final int CASES_PER_METHOD = 128;
+    static final int MAX_BLOCK_INSTRUCTIONS = 100;
+    private static final int MAX_STACK = 16;
+    // Returned by a dispatch method that ran no block, block methods always return a valid instruction pointer.
+    private static final int NOT_RUN = -1;
+
+    private static final String MEMORY = "com/adventofcode/intcode/Memory";
+    private static final String MACHINE = "com/adventofcode/intcode/IntcodeMachine";
+    private static final String BLOCK_DESCRIPTOR = "(L" + MEMORY + ";L" + MACHINE + ";)I";
+    private static final String EXECUTE_DESCRIPTOR = "(L" + MEMORY + ";L" + MACHINE + ";I)I";
+    private static final String DISPATCH_DESCRIPTOR = "(L" + MEMORY + ";L" + MACHINE + ";I)I";
+    private static final String SUPER = "com/adventofcode/intcode/GeneratedBlocks";
+    private static final String PACKAGE = "com/adventofcode/intcode/generated/";
+
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+    // Regions evicted here stay loaded as long as some machine still runs them.
+    private static final Cache<Key, CompiledRegion> CACHE = CacheBuilder.newBuilder().maximumSize(256).build();
+
+    private final Memory memory;
+    private final BitSet leaders = new BitSet();
+    private final List<Integer> order = new ArrayList<>();
+
+    private BlockCompiler(Memory memory) {
+        this.memory = memory;
+    }
+
+    /**
+     * Returns the compiled region for the code reachable from the seeds, or null if none of it can be compiled or the
+     * generated class fails to load.
+     */
+    static CompiledRegion compile(Memory memory, int[] seeds) {
+        BlockCompiler compiler = new BlockCompiler(memory);
+        int[] ranges = compiler.ranges(seeds, MAX_BLOCKS);
+        if (ranges.length == 0) {
+            return null;
+        }
+        int[] starts = new int[ranges.length / 2];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = ranges[2 * i];
+        }
+
+        Key key = compiler.key(starts, ranges);
+        try {
+            return CACHE.get(key, () -> define(compiler.generate(starts, ranges), starts, ranges, key.values));
+        } catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+            return null;
+        }
+    }
+
+    private boolean isComplete(int address, int length) {
+        return address >= 0 && (long) address + length <= memory.denseSize();
+    }
+
+    /**
+     * Returns the start and end of every block reachable from the seeds, without limit on their number, in the layout
+     * of {@link CompiledRegion}. Used by {@link IntcodeSourceGenerator} to compile a whole program ahead of time.
+     */
+    static int[] ranges(Memory memory, int[] seeds) {
+        return new BlockCompiler(memory).ranges(seeds, Integer.MAX_VALUE);
+    }
+
+    private int[] ranges(int[] seeds, int maxBlocks) {
+        findLeaders(seeds);
+        int[] starts = order.stream().mapToInt(Integer::intValue).limit(maxBlocks).sorted().toArray();
+        int[] ranges = new int[2 * starts.length];
+        for (int i = 0; i < starts.length; i++) {
+            ranges[2 * i] = starts[i];
+            ranges[2 * i + 1] = blockEnd(starts[i]);
+        }
+        return ranges;
+    }
+
+    static int length(int opcode) {
+        switch (opcode) {
+            case 1:
+            case 2:
+            case 7:
+            case 8:
+                return 4;
+            case 5:
+            case 6:
+                return 3;
+            case 3:
+            case 4:
+            case 9:
+                return 2;
+            default:
+                return 1;
+        }
+    }
+
+    private static boolean hasValidModes(int instruction, int parameters) {
+        for (int offset = 1; offset <= parameters; offset++) {
+            if (Instructions.mode(instruction, offset) > 2) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if the instruction at this address can be part of a compiled block.
+     */
+    private boolean isCompilable(int address) {
+        if (!isComplete(address, 1)) {
+            return false;
+        }
+        int instruction = memory.decode(address);
+        int opcode = Instructions.opcode(instruction);
+        switch (opcode) {
+            case 1:
+            case 2:
+            case 5:
+            case 6:
+            case 7:
+            case 8:
+            case 9:
+                int length = length(opcode);
+                return isComplete(address, length) && hasValidModes(instruction, length - 1);
+            default:
+                return false;
+        }
+    }
+
+    private void addLeader(Deque<Integer> work, int address) {
+        if (isComplete(address, 1) && !leaders.get(address)) {
+            leaders.set(address);
+            work.add(address);
+        }
+    }
+
+    private void findLeaders(int[] seeds) {
+        Deque<Integer> work = new ArrayDeque<>();
+        BitSet visited = new BitSet();
+        for (int seed : seeds) {
+            addLeader(work, seed);
+        }
+        while (!work.isEmpty()) {
+            int address = work.poll();
+            if (isCompilable(address)) {
+                order.add(address);
+            }
+            int instructions = 0;
+            while (isComplete(address, 1) && !visited.get(address)) {
+                visited.set(address);
+                int instruction = memory.decode(address);
+                int opcode = Instructions.opcode(instruction);
+                if (opcode == 3 || opcode == 4) {
+                    addLeader(work, address + 2);
+                    break;
+                }
+                if (!isCompilable(address)) {
+                    break;
+                }
+                if (opcode == 5 || opcode == 6) {
+                    addLeader(work, address + 3);
+                    if (Instructions.mode(instruction, 2) == 1) {
+                        addLeader(work, (int) memory.read(address + 2));
+                    }
+                    break;
+                }
+                address += length(opcode);
+                if (leaders.get(address)) {
+                    break;
+                }
+                if (++instructions == MAX_BLOCK_INSTRUCTIONS) {
+                    addLeader(work, address);
+                    break;
+                }
+            }
+        }
+        // Leaders that cannot be compiled stay out of the dispatch, the interpreter handles them.
+        for (int address = leaders.nextSetBit(0); address >= 0; address = leaders.nextSetBit(address + 1)) {
+            if (!isCompilable(address)) {
+                leaders.clear(address);
+            }
+        }
+    }
+
+    /**
+     * Returns the end (exclusive) of the block starting at this address: the block stops after a jump, before an
+     * instruction it cannot compile, when the next instruction starts another block, or once it is long enough.
+     */
+    private int blockEnd(int start) {
+        int address = start;
+        int instructions = 0;
+        while (isCompilable(address)) {
+            int opcode = Instructions.opcode(memory.decode(address));
+            address += length(opcode);
+            if (opcode == 5 || opcode == 6 || leaders.get(address) || ++instructions == MAX_BLOCK_INSTRUCTIONS) {
+                break;
+            }
+        }
+        return address;
+    }
+
+    private Key key(int[] starts, int[] ranges) {
+        int cells = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            cells += ranges[i + 1] - ranges[i];
+        }
+        long[] values = new long[cells];
+        int index = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            for (int address = ranges[i]; address < ranges[i + 1]; address++) {
+                values[index++] = memory.read(address);
+            }
+        }
+        return new Key(starts, ranges, values);
+    }
+
+    /**
+     * Returns the class compiled from the code reachable from the seeds, or null if none of it can be compiled.
+     */
+    static ClassFile generate(Memory memory, int[] seeds) {
+        BlockCompiler compiler = new BlockCompiler(memory);
+        int[] ranges = compiler.ranges(seeds, MAX_BLOCKS);
+        if (ranges.length == 0) {
+            return null;
+        }
+        int[] starts = new int[ranges.length / 2];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = ranges[2 * i];
+        }
+        return compiler.generate(starts, ranges);
+    }
+
+    private ClassFile generate(int[] starts, int[] ranges) {
+        String name = PACKAGE + "Blocks" + COUNTER.incrementAndGet();
+        ClassFile classFile = new ClassFile(name, SUPER, HUGE_METHOD);
+
+        ClassFile.Code init = classFile.new Code();
+        init.op(ClassFile.Code.ALOAD_0);
+        init.op(ClassFile.Code.INVOKESPECIAL, classFile.methodRef(SUPER, "<init>", "()V"));
+        init.op(ClassFile.Code.RETURN);
+        classFile.addMethod(ClassFile.ACC_PUBLIC, "<init>", "()V", 1, 1, init);
+
+        int[] lengths = new int[starts.length];
+        for (int i = 0; i < starts.length; i++) {
+            ClassFile.Code code = classFile.new Code();
+            emitBlock(classFile, code, ranges[2 * i], ranges[2 * i + 1]);
+            classFile.addMethod(ClassFile.ACC_STATIC, "b" + starts[i], BLOCK_DESCRIPTOR, MAX_STACK, 2, code);
+            lengths[i] = instructions(ranges[2 * i], ranges[2 * i + 1]);
+        }
+        int methods = (starts.length + CASES_PER_METHOD - 1) / CASES_PER_METHOD;
+        for (int method = 0; method < methods; method++) {
+            int from = method * CASES_PER_METHOD;
+            int to = Math.min(starts.length, from + CASES_PER_METHOD);
+            classFile.addMethod(ClassFile.ACC_STATIC, "d" + method, DISPATCH_DESCRIPTOR, MAX_STACK, 3,
+                    emitDispatch(classFile, name, starts, lengths, from, to));
+        }
+        classFile.addMethod(ClassFile.ACC_PUBLIC, "execute", EXECUTE_DESCRIPTOR, MAX_STACK, 4, emitExecute(classFile, name, starts, methods));
+        return classFile;
+    }
+
+    private static CompiledRegion define(ClassFile classFile, int[] starts, int[] ranges, long[] values) throws ReflectiveOperationException {
+        Class<?> type = new RegionLoader(BlockCompiler.class.getClassLoader()).define(classFile.toByteArray());
+        CompiledBlocks blocks = (CompiledBlocks) type.getDeclaredConstructor().newInstance();
+
+        boolean[] entries = new boolean[starts[starts.length - 1] + 1];
+        for (int start : starts) {
+            entries[start] = true;
+        }
+        return new CompiledRegion(blocks, entries, ranges, values);
+    }
+
+    /**
+     * Emits the loop that runs block after block until the next address is not compiled, the compiled code was
+     * modified, or the machine's fuel does not cover the whole next block (see {@link IntcodeMachine#fuel}). The
+     * dispatch method covering the instruction pointer returns the address following the block it ran, or
+     * {@link #NOT_RUN} when it ran none.
+     */
+    private ClassFile.Code emitExecute(ClassFile classFile, String name, int[] starts, int methods) {
+        ClassFile.Code code = classFile.new Code();
+        int loop = code.position();
+        code.op(ClassFile.Code.ALOAD_1);
+        code.op(ClassFile.Code.INVOKESTATIC, classFile.methodRef(SUPER, "codeModified", "(L" + MEMORY + ";)Z"));
+        int dispatch = code.branch(ClassFile.Code.IFEQ);
+        code.op(ClassFile.Code.ILOAD_3);
+        code.op(ClassFile.Code.IRETURN);
+        code.patch(dispatch);
+
+        for (int method = 1; method < methods; method++) {
+            code.op(ClassFile.Code.ILOAD_3);
+            code.pushInt(starts[method * CASES_PER_METHOD]);
+            int next = code.branch(ClassFile.Code.IF_ICMPGE);
+            emitDispatchCall(classFile, code, name, method - 1, loop);
+            code.patch(next);
+        }
+        emitDispatchCall(classFile, code, name, methods - 1, loop);
+        return code;
+    }
+
+    private void emitDispatchCall(ClassFile classFile, ClassFile.Code code, String name, int method, int loop) {
+        code.op(ClassFile.Code.ALOAD_1);
+        code.op(ClassFile.Code.ALOAD_2);
+        code.op(ClassFile.Code.ILOAD_3);
+        code.op(ClassFile.Code.INVOKESTATIC, classFile.methodRef(name, "d" + method, DISPATCH_DESCRIPTOR));
+        code.op(ClassFile.Code.DUP);
+        int stop = code.branch(ClassFile.Code.IFLT);
+        code.op(ClassFile.Code.ISTORE_3);
+        code.goTo(loop);
+        code.patch(stop);
+        code.op(ClassFile.Code.POP);
+        code.op(ClassFile.Code.ILOAD_3);
+        code.op(ClassFile.Code.IRETURN);
+    }
+
+    /**
+     * Emits the switch on the instruction pointer over the blocks in [from, to): each case checks and takes the fuel
+     * of its block and runs it.
+     */
+    private ClassFile.Code emitDispatch(ClassFile classFile, String name, int[] starts, int[] lengths, int from, int to) {
+        ClassFile.Code code = classFile.new Code();
+        code.op(ClassFile.Code.ILOAD_2);
+        int lookupSwitch = code.position();
+        code.op(ClassFile.Code.LOOKUPSWITCH);
+        while (code.position() % 4 != 0) {
+            code.u1(0);
+        }
+        int defaultOffset = code.position();
+        code.u4(0);
+        code.u4(to - from);
+        int pairs = code.position();
+        for (int i = from; i < to; i++) {
+            code.u4(starts[i]);
+            code.u4(0);
+        }
+
+        for (int i = from; i < to; i++) {
+            code.setU4(pairs + 8 * (i - from) + 4, code.position() - lookupSwitch);
+            code.op(ClassFile.Code.ALOAD_1);
+            code.op(ClassFile.Code.INVOKESTATIC, classFile.methodRef(SUPER, "fuel", "(L" + MACHINE + ";)J"));
+            code.pushLong(lengths[i]);
+            code.op(ClassFile.Code.LCMP);
+            int fuelled = code.branch(ClassFile.Code.IFGE);
+            emitNotRun(code);
+            code.patch(fuelled);
+            code.op(ClassFile.Code.ALOAD_1);
+            code.op(ClassFile.Code.DUP);
+            code.op(ClassFile.Code.INVOKESTATIC, classFile.methodRef(SUPER, "fuel", "(L" + MACHINE + ";)J"));
+            code.pushLong(lengths[i]);
+            code.op(ClassFile.Code.LSUB);
+            code.op(ClassFile.Code.INVOKESTATIC, classFile.methodRef(SUPER, "setFuel", "(L" + MACHINE + ";J)V"));
+            code.op(ClassFile.Code.ALOAD_0);
+            code.op(ClassFile.Code.ALOAD_1);
+            code.op(ClassFile.Code.INVOKESTATIC, classFile.methodRef(name, "b" + starts[i], BLOCK_DESCRIPTOR));
+            code.op(ClassFile.Code.IRETURN);
+        }
+        code.setU4(defaultOffset, code.position() - lookupSwitch);
+        emitNotRun(code);
+        return code;
+    }
+
+    private static void emitNotRun(ClassFile.Code code) {
+        code.pushInt(NOT_RUN);
+        code.op(ClassFile.Code.IRETURN);
+    }
+
+    private void emitRelativeBase(ClassFile classFile, ClassFile.Code code) {
+        code.op(ClassFile.Code.ALOAD_1);
+        code.op(ClassFile.Code.INVOKESTATIC, classFile.methodRef(SUPER, "relativeBase", "(L" + MACHINE + ";)J"));
+    }
+
+    private void emitRead(ClassFile classFile, ClassFile.Code code, int address, int instruction, int offset) {
+        long parameter = memory.read(address + offset);
+        switch (Instructions.mode(instruction, offset)) {
+            case 0:
+                code.op(ClassFile.Code.ALOAD_0);
+                code.pushLong(parameter);
+                code.op(ClassFile.Code.INVOKEVIRTUAL, classFile.methodRef(MEMORY, "read", "(J)J"));
+                break;
+            case 1:
+                code.pushLong(parameter);
+                break;
+            default:
+                code.op(ClassFile.Code.ALOAD_0);
+                emitRelativeBase(classFile, code);
+                code.pushLong(parameter);
+                code.op(ClassFile.Code.LADD);
+                code.op(ClassFile.Code.INVOKEVIRTUAL, classFile.methodRef(MEMORY, "read", "(J)J"));
+                break;
+        }
+    }
+
+    private void emitWriteAddress(ClassFile classFile, ClassFile.Code code, int address, int instruction, int offset) {
+        long parameter = memory.read(address + offset);
+        switch (Instructions.mode(instruction, offset)) {
+            case 0:
+                code.pushLong(parameter);
+                break;
+            case 1:
+                code.pushLong(address + offset);
+                break;
+            default:
+                emitRelativeBase(classFile, code);
+                code.pushLong(parameter);
+                code.op(ClassFile.Code.LADD);
+                break;
+        }
+    }
+
+    /**
+     * Emits a write followed by the early exit taken when it modified compiled code, which gives back the fuel of the
+     * {@code unexecuted} instructions left in the block.
+     */
+    private void emitWrite(ClassFile classFile, ClassFile.Code code, int next, int unexecuted) {
+        code.op(ClassFile.Code.INVOKEVIRTUAL, classFile.methodRef(MEMORY, "write", "(JJ)V"));
+        code.op(ClassFile.Code.ALOAD_0);
+        code.op(ClassFile.Code.INVOKESTATIC, classFile.methodRef(SUPER, "codeModified", "(L" + MEMORY + ";)Z"));
+        int unmodified = code.branch(ClassFile.Code.IFEQ);
+        if (unexecuted > 0) {
+            code.op(ClassFile.Code.ALOAD_1);
+            code.op(ClassFile.Code.DUP);
+            code.op(ClassFile.Code.INVOKESTATIC, classFile.methodRef(SUPER, "fuel", "(L" + MACHINE + ";)J"));
+            code.pushLong(unexecuted);
+            code.op(ClassFile.Code.LADD);
+            code.op(ClassFile.Code.INVOKESTATIC, classFile.methodRef(SUPER, "setFuel", "(L" + MACHINE + ";J)V"));
+        }
+        code.pushInt(next);
+        code.op(ClassFile.Code.IRETURN);
+        code.patch(unmodified);
+    }
+
+    private int instructions(int start, int end) {
+        int count = 0;
+        for (int address = start; address < end; address += length(Instructions.opcode(memory.decode(address)))) {
+            count++;
+        }
+        return count;
+    }
+
+    private void emitBlock(ClassFile classFile, ClassFile.Code code, int start, int end) {
+        int address = start;
+        int left = instructions(start, end);
+        while (address < end) {
+            int instruction = memory.decode(address);
+            int opcode = Instructions.opcode(instruction);
+            int next = address + length(opcode);
+            left--;
+            switch (opcode) {
+                case 1:
+                case 2:
+                    code.op(ClassFile.Code.ALOAD_0);
+                    emitWriteAddress(classFile, code, address, instruction, 3);
+                    emitRead(classFile, code, address, instruction, 1);
+                    emitRead(classFile, code, address, instruction, 2);
+                    code.op(opcode == 1 ? ClassFile.Code.LADD : ClassFile.Code.LMUL);
+                    emitWrite(classFile, code, next, left);
+                    break;
+                case 7:
+                case 8: {
+                    code.op(ClassFile.Code.ALOAD_0);
+                    emitWriteAddress(classFile, code, address, instruction, 3);
+                    emitRead(classFile, code, address, instruction, 1);
+                    emitRead(classFile, code, address, instruction, 2);
+                    code.op(ClassFile.Code.LCMP);
+                    int zero = code.branch(opcode == 7 ? ClassFile.Code.IFGE : ClassFile.Code.IFNE);
+                    code.op(ClassFile.Code.LCONST_1);
+                    int done = code.branch(ClassFile.Code.GOTO);
+                    code.patch(zero);
+                    code.op(ClassFile.Code.LCONST_0);
+                    code.patch(done);
+                    emitWrite(classFile, code, next, left);
+                    break;
+                }
+                case 9:
+                    code.op(ClassFile.Code.ALOAD_1);
+                    code.op(ClassFile.Code.DUP);
+                    code.op(ClassFile.Code.INVOKESTATIC, classFile.methodRef(SUPER, "relativeBase", "(L" + MACHINE + ";)J"));
+                    emitRead(classFile, code, address, instruction, 1);
+                    code.op(ClassFile.Code.LADD);
+                    code.op(ClassFile.Code.INVOKESTATIC, classFile.methodRef(SUPER, "setRelativeBase", "(L" + MACHINE + ";J)V"));
+                    break;
+                case 5:
+                case 6: {
+                    emitRead(classFile, code, address, instruction, 1);
+                    code.op(ClassFile.Code.LCONST_0);
+                    code.op(ClassFile.Code.LCMP);
+                    int fallThrough = code.branch(opcode == 5 ? ClassFile.Code.IFEQ : ClassFile.Code.IFNE);
+                    emitRead(classFile, code, address, instruction, 2);
+                    code.op(ClassFile.Code.INVOKESTATIC, classFile.methodRef(SUPER, "jump", "(J)I"));
+                    code.op(ClassFile.Code.IRETURN);
+                    code.patch(fallThrough);
+                    code.pushInt(next);
+                    code.op(ClassFile.Code.IRETURN);
+                    return;
+                }
+                default:
+                    throw new IllegalStateException("compile(" + opcode + ")");
+            }
+            address = next;
+        }
+        code.pushInt(end);
+        code.op(ClassFile.Code.IRETURN);
+    }
+
+    private static final class Key {
+        private final int[] starts;
+        private final int[] ranges;
+        private final long[] values;
+        private final int hashCode;
+
+        private Key(int[] starts, int[] ranges, long[] values) {
+            this.starts = starts;
+            this.ranges = ranges;
+            this.values = values;
+            this.hashCode = 31 * (31 * Arrays.hashCode(starts) + Arrays.hashCode(ranges)) + Arrays.hashCode(values);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Arrays.equals(starts, key.starts) && Arrays.equals(ranges, key.ranges) && Arrays.equals(values, key.values);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+
+    /**
+     * Defines a single generated class, the class and its loader becoming unreachable together.
+     */
+    private static final class RegionLoader extends ClassLoader {
+        private RegionLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        private Class<?> define(byte[] bytes) {
+            return defineClass(null, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.adventofcode.intcode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Minimal class file writer used by {@link BlockCompiler}. Classes are emitted with version 49 (Java 5) so that the
+ * verifier infers frames itself and no StackMapTable has to be computed.
+ */
+class ClassFile {
+    static final int ACC_PUBLIC = 0x0001;
+    static final int ACC_STATIC = 0x0008;
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    private final ByteArrayOutputStream constantPoolBytes = new ByteArrayOutputStream();
+    private final DataOutputStream constantPool = new DataOutputStream(constantPoolBytes);
+    private final Map<String, Integer> constants = new HashMap<>();
+    private final List<byte[]> methods = new ArrayList<>();
+    private final int thisClass;
+    private final int superClass;
+    private final int[] interfaces;
+    // Longest method accepted, in bytes of bytecode.
+    private final int maxCodeLength;
+    private int constantCount = 1;
+
+    ClassFile(String name, String superName, int maxCodeLength, String... interfaceNames) {
+        this.maxCodeLength = maxCodeLength;
+        thisClass = classConstant(name);
+        superClass = classConstant(superName);
+        interfaces = new int[interfaceNames.length];
+        for (int i = 0; i < interfaceNames.length; i++) {
+            interfaces[i] = classConstant(interfaceNames[i]);
+        }
+    }
+
+    private int constant(String key, int slots, ConstantWriter writer) {
+        Integer index = constants.get(key);
+        if (index == null) {
+            try {
+                writer.write(constantPool);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            index = constantCount;
+            constantCount += slots;
+            constants.put(key, index);
+        }
+        return index;
+    }
+
+    int utf8(String value) {
+        return constant("U" + value, 1, out -> {
+            out.writeByte(1);
+            out.writeUTF(value);
+        });
+    }
+
+    int intConstant(int value) {
+        return constant("I" + value, 1, out -> {
+            out.writeByte(3);
+            out.writeInt(value);
+        });
+    }
+
+    int longConstant(long value) {
+        return constant("J" + value, 2, out -> {
+            out.writeByte(5);
+            out.writeLong(value);
+        });
+    }
+
+    int classConstant(String name) {
+        int nameIndex = utf8(name);
+        return constant("C" + name, 1, out -> {
+            out.writeByte(7);
+            out.writeShort(nameIndex);
+        });
+    }
+
+    private int nameAndType(String name, String descriptor) {
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        return constant("N" + name + ":" + descriptor, 1, out -> {
+            out.writeByte(12);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+        });
+    }
+
+    private int memberRef(int tag, String owner, String name, String descriptor) {
+        int classIndex = classConstant(owner);
+        int nameAndTypeIndex = nameAndType(name, descriptor);
+        return constant(tag + owner + "." + name + ":" + descriptor, 1, out -> {
+            out.writeByte(tag);
+            out.writeShort(classIndex);
+            out.writeShort(nameAndTypeIndex);
+        });
+    }
+
+    int methodRef(String owner, String name, String descriptor) {
+        return memberRef(10, owner, name, descriptor);
+    }
+
+    /**
+     * Adds a method with the given code.
+     *
+     * @throws IllegalStateException if the code is longer than the limit of this class
+     */
+    void addMethod(int access, String name, String descriptor, int maxStack, int maxLocals, Code code) {
+        byte[] bytes = code.toByteArray();
+        if (bytes.length > maxCodeLength) {
+            throw new IllegalStateException("method " + name + " of " + bytes.length + " bytes");
+        }
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        int codeIndex = utf8("Code");
+        ByteArrayOutputStream method = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(method)) {
+            out.writeShort(access);
+            out.writeShort(nameIndex);
+            out.writeShort(descriptorIndex);
+            out.writeShort(1);
+            out.writeShort(codeIndex);
+            out.writeInt(12 + bytes.length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+            out.writeShort(0);
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        methods.add(method.toByteArray());
+    }
+
+    byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(49);
+            out.writeShort(constantCount);
+            constantPool.flush();
+            constantPoolBytes.writeTo(out);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            out.writeShort(interfaces.length);
+            for (int index : interfaces) {
+                out.writeShort(index);
+            }
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (byte[] method : methods) {
+                out.write(method);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private interface ConstantWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /**
+     * Bytecode buffer with forward branch patching. Branch offsets are 16 bits, callers keep methods small.
+     */
+    class Code {
+        static final int ALOAD_0 = 0x2a;
+        static final int ALOAD_1 = 0x2b;
+        static final int ALOAD_2 = 0x2c;
+        static final int ILOAD_2 = 0x1c;
+        static final int ILOAD_3 = 0x1d;
+        static final int ISTORE_3 = 0x3e;
+        static final int POP = 0x57;
+        static final int DUP = 0x59;
+        static final int LCONST_0 = 0x09;
+        static final int LCONST_1 = 0x0a;
+        static final int LADD = 0x61;
+        static final int LSUB = 0x65;
+        static final int LMUL = 0x69;
+        static final int LCMP = 0x94;
+        static final int IFEQ = 0x99;
+        static final int IFNE = 0x9a;
+        static final int IFLT = 0x9b;
+        static final int IFGE = 0x9c;
+        static final int IF_ICMPGE = 0xa2;
+        static final int GOTO = 0xa7;
+        static final int IRETURN = 0xac;
+        static final int RETURN = 0xb1;
+        static final int INVOKEVIRTUAL = 0xb6;
+        static final int INVOKESPECIAL = 0xb7;
+        static final int INVOKESTATIC = 0xb8;
+        static final int LOOKUPSWITCH = 0xab;
+
+        private byte[] bytes = new byte[256];
+        private int size;
+
+        int position() {
+            return size;
+        }
+
+        void u1(int value) {
+            if (size == bytes.length) {
+                bytes = Arrays.copyOf(bytes, size << 1);
+            }
+            bytes[size++] = (byte) value;
+        }
+
+        void u2(int value) {
+            u1(value >>> 8);
+            u1(value);
+        }
+
+        void u4(int value) {
+            u2(value >>> 16);
+            u2(value);
+        }
+
+        void setU2(int at, int value) {
+            bytes[at] = (byte) (value >>> 8);
+            bytes[at + 1] = (byte) value;
+        }
+
+        void setU4(int at, int value) {
+            setU2(at, value >>> 16);
+            setU2(at + 2, value);
+        }
+
+        void op(int opcode) {
+            u1(opcode);
+        }
+
+        void op(int opcode, int index) {
+            u1(opcode);
+            u2(index);
+        }
+
+        void pushInt(int value) {
+            if (value >= -1 && value <= 5) {
+                u1(0x03 + value);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                u1(0x10);
+                u1(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                u1(0x11);
+                u2(value);
+            } else {
+                op(0x13, intConstant(value));
+            }
+        }
+
+        void pushLong(long value) {
+            if (value == 0L) {
+                u1(LCONST_0);
+            } else if (value == 1L) {
+                u1(LCONST_1);
+            } else {
+                op(0x14, longConstant(value));
+            }
+        }
+
+        /**
+         * Emits a forward branch and returns its position, to be given to {@link #patch(int)} once the target is
+         * reached.
+         */
+        int branch(int opcode) {
+            int at = position();
+            op(opcode, 0);
+            return at;
+        }
+
+        void patch(int branch) {
+            int offset = position() - branch;
+            if (offset > Short.MAX_VALUE) {
+                throw new IllegalStateException("branch offset " + offset);
+            }
+            setU2(branch + 1, offset);
+        }
+
+        void goTo(int target) {
+            int offset = target - position();
+            if (offset < Short.MIN_VALUE) {
+                throw new IllegalStateException("branch offset " + offset);
+            }
+            op(GOTO, offset & 0xFFFF);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
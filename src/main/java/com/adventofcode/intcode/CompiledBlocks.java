@@ -0,0 +1,9 @@
+package com.adventofcode.intcode;
+
+/**
+ * Implemented by the classes generated by {@link BlockCompiler}. Runs compiled blocks starting at {@code ip} and
+ * returns the address at which the interpreter has to take over again.
+ */
+interface CompiledBlocks {
+    int execute(Memory memory, IntcodeMachine machine, int ip);
+}
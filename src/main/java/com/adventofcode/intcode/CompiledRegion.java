@@ -0,0 +1,52 @@
+package com.adventofcode.intcode;
+
+/**
+ * Compiled code for a set of basic blocks, along with the cells it was compiled from. The same region can be shared by
+ * every machine whose memory holds the same code.
+ */
+final class CompiledRegion {
+    private final CompiledBlocks blocks;
+    private final boolean[] entries;
+    private final int[] ranges;
+    // Values of the cells of every range, one range after the other.
+    private final long[] code;
+
+    CompiledRegion(CompiledBlocks blocks, boolean[] entries, int[] ranges, long[] code) {
+        this.blocks = blocks;
+        this.entries = entries;
+        this.ranges = ranges;
+        this.code = code;
+    }
+
+    boolean isEntry(int ip) {
+        return ip >= 0 && ip < entries.length && entries[ip];
+    }
+
+    int execute(Memory memory, IntcodeMachine machine, int ip) {
+        return blocks.execute(memory, machine, ip);
+    }
+
+    /**
+     * Returns true if the memory holds the code this region was compiled from.
+     */
+    boolean matches(Memory memory) {
+        if (ranges.length == 0 || ranges[ranges.length - 1] > memory.denseSize()) {
+            return false;
+        }
+        int index = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            for (int address = ranges[i]; address < ranges[i + 1]; address++) {
+                if (memory.read(address) != code[index++]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    void install(Memory memory) {
+        for (int i = 0; i < ranges.length; i += 2) {
+            memory.markCode(ranges[i], ranges[i + 1]);
+        }
+    }
+}
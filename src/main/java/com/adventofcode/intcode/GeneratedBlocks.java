@@ -0,0 +1,35 @@
+package com.adventofcode.intcode;
+
+/**
+ * Superclass of the classes generated by {@link BlockCompiler}. Each generated class lives in a class loader of its
+ * own, so that it is unloaded once no machine runs it anymore, and therefore outside of this package: these methods
+ * give it the package-private machine state it needs.
+ */
+public abstract class GeneratedBlocks implements CompiledBlocks {
+    protected GeneratedBlocks() {
+    }
+
+    protected static boolean codeModified(Memory memory) {
+        return memory.codeModified;
+    }
+
+    protected static long fuel(IntcodeMachine machine) {
+        return machine.fuel;
+    }
+
+    protected static void setFuel(IntcodeMachine machine, long fuel) {
+        machine.fuel = fuel;
+    }
+
+    protected static long relativeBase(IntcodeMachine machine) {
+        return machine.relativeBase;
+    }
+
+    protected static void setRelativeBase(IntcodeMachine machine, long relativeBase) {
+        machine.relativeBase = relativeBase;
+    }
+
+    protected static int jump(long address) {
+        return IntcodeMachine.jumpTarget(address);
+    }
+}
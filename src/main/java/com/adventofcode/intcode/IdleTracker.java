@@ -0,0 +1,63 @@
+package com.adventofcode.intcode;
+
+import java.util.BitSet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells when every party of a threaded network is idle at the same time. A party reports {@link #idle(int)} right
+ * before it blocks on an empty input queue, whoever hands it input reports {@link #busy(int)} before enqueuing it, so
+ * the tracker never sees a party idle while input is waiting for it.
+ * <p>
+ * Threads waiting in {@link #awaitIdle()} are only woken when the last busy party turns idle, never by polling.
+ */
+public class IdleTracker {
+    private final int parties;
+    private final BitSet idle;
+    private int idleCount;
+
+    public IdleTracker(int parties) {
+        this.parties = parties;
+        this.idle = new BitSet(parties);
+    }
+
+    public synchronized void idle(int party) {
+        if (!idle.get(party)) {
+            idle.set(party);
+            if (++idleCount == parties) {
+                notifyAll();
+            }
+        }
+    }
+
+    public synchronized void busy(int party) {
+        if (idle.get(party)) {
+            idle.clear(party);
+            idleCount--;
+        }
+    }
+
+    public synchronized boolean isIdle() {
+        return idleCount == parties;
+    }
+
+    public synchronized void awaitIdle() throws InterruptedException {
+        while (idleCount != parties) {
+            wait();
+        }
+    }
+
+    /**
+     * Waits until every party is idle or the timeout elapses, and returns whether they all are.
+     */
+    public synchronized boolean awaitIdle(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (idleCount != parties) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,33 @@
+package com.adventofcode.intcode;
+
+/**
+ * Packed representation of a decoded instruction: the opcode lives in the low byte and each parameter mode in the
+ * following nibbles. A packed value of zero means "not decoded yet", so every decoded instruction carries the
+ * {@link #DECODED} flag.
+ */
+public final class Instructions {
+    public static final int DECODED = 1 << 20;
+
+    private Instructions() {
+    }
+
+    public static int decode(long code) {
+        int intCode = (int) code;
+        if (intCode < 0) {
+            return DECODED;
+        }
+        int opcode = intCode % 100;
+        int mode1 = (intCode / 100) % 10;
+        int mode2 = (intCode / 1000) % 10;
+        int mode3 = (intCode / 10000) % 10;
+        return DECODED | opcode | mode1 << 8 | mode2 << 12 | mode3 << 16;
+    }
+
+    public static int opcode(int instruction) {
+        return instruction & 0xFF;
+    }
+
+    public static int mode(int instruction, int offset) {
+        return (instruction >>> (4 + 4 * offset)) & 0xF;
+    }
+}
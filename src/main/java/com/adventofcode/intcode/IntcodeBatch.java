@@ -0,0 +1,353 @@
+package com.adventofcode.intcode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many copies ("lanes") of one program in lockstep, each lane with its own inputs, for query programs run
+ * thousands of times such as the Day 19 drone.
+ * <p>
+ * Memory is laid out as a structure of arrays: the cells of every lane for one address are contiguous, so a step that
+ * runs the same instruction on many lanes walks adjacent cells. Lanes are kept in groups that stand at the same
+ * instruction pointer. A group runs, decoding each instruction once for all its lanes, until a jump splits it; the
+ * lanes that went elsewhere join the group waiting at their new address, or start one, and the groups take turns so
+ * that none waits for another to halt. Lanes whose branches join back run together again.
+ * <p>
+ * A lane left alone for {@value #SOLO_STEPS} steps gains nothing from the batch: it is split off and finished on an
+ * {@link IntcodeMachine} of its own.
+ * <p>
+ * A lane that needs more inputs than it was given fails the whole batch with an {@link IllegalStateException}.
+ * Memory is dense: addresses are limited to what fits in one array across all lanes.
+ */
+public class IntcodeBatch {
+    private static final long MAX_CELLS = Integer.MAX_VALUE - 8;
+    // Steps a group runs before the next one gets its turn.
+    private static final int QUANTUM = 1 << 10;
+    static final int SOLO_STEPS = 1 << 8;
+
+    private final int lanes;
+    private long[] cells;
+    private int capacity;
+    private final int[] positions;
+    private final long[] relativeBases;
+    // One past the highest address each lane wrote, a lane halts when its instruction pointer runs past it.
+    private final long[] sizes;
+    private final boolean[] halted;
+    private final long[][] inputs;
+    private final int[] consumed;
+    private final LongQueue[] outputs;
+    // Groups waiting for their turn, in turn order and by instruction pointer.
+    private final ArrayDeque<Group> ready = new ArrayDeque<>();
+    private final Map<Integer, Group> waiting = new HashMap<>();
+    private long steps;
+    private int splitOff;
+
+    public IntcodeBatch(IntcodeProgram program, long[][] inputs) {
+        this.lanes = inputs.length;
+        this.capacity = program.size();
+        if ((long) capacity * lanes > MAX_CELLS) {
+            throw new IllegalStateException("batch(" + lanes + ")");
+        }
+        this.cells = new long[capacity * lanes];
+        for (int address = 0; address < capacity; address++) {
+            long value = program.get(address);
+            for (int lane = 0; lane < lanes; lane++) {
+                cells[address * lanes + lane] = value;
+            }
+        }
+        this.positions = new int[lanes];
+        this.relativeBases = new long[lanes];
+        this.sizes = new long[lanes];
+        Arrays.fill(sizes, capacity);
+        this.halted = new boolean[lanes];
+        this.inputs = inputs;
+        this.consumed = new int[lanes];
+        this.outputs = new LongQueue[lanes];
+        for (int lane = 0; lane < lanes; lane++) {
+            outputs[lane] = new LongQueue();
+        }
+    }
+
+    /**
+     * Runs one batch per slice of at most {@code lanesPerBatch} input lists on the executor, and returns the outputs
+     * of every input list in order.
+     */
+    public static long[][] run(IntcodeProgram program, long[][] inputs, ExecutorService executorService, int lanesPerBatch) {
+        List<Future<long[][]>> futures = new ArrayList<>();
+        for (int from = 0; from < inputs.length; from += lanesPerBatch) {
+            long[][] slice = Arrays.copyOfRange(inputs, from, Math.min(from + lanesPerBatch, inputs.length));
+            futures.add(executorService.submit(() -> new IntcodeBatch(program, slice).run()));
+        }
+        long[][] outputs = new long[inputs.length][];
+        int index = 0;
+        try {
+            for (Future<long[][]> future : futures) {
+                for (long[] output : future.get()) {
+                    outputs[index++] = output;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<long[][]> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return outputs;
+    }
+
+    /**
+     * Runs every lane until it halts and returns the outputs of each lane.
+     */
+    public long[][] run() {
+        if (capacity > 0) {
+            Group group = new Group(0);
+            for (int lane = 0; lane < lanes; lane++) {
+                group.add(lane);
+            }
+            schedule(group);
+        }
+        while (!ready.isEmpty()) {
+            Group group = ready.poll();
+            waiting.remove(group.position);
+            run(group);
+        }
+        long[][] result = new long[lanes][];
+        for (int lane = 0; lane < lanes; lane++) {
+            result[lane] = outputs[lane].toArray();
+        }
+        return result;
+    }
+
+    /**
+     * Number of steps run in the batch so far: each step decoded one instruction for one or more lanes.
+     */
+    public long getSteps() {
+        return steps;
+    }
+
+    /**
+     * Number of lanes finished on a machine of their own.
+     */
+    public int getSplitOff() {
+        return splitOff;
+    }
+
+    private void run(Group group) {
+        for (int turn = 0; turn < QUANTUM; turn++) {
+            if (group.count == 1 && group.alone >= SOLO_STEPS) {
+                splitOff(group.lanes[0]);
+                return;
+            }
+            steps++;
+            int position = group.position;
+            long word = read(position, group.lanes[0]);
+            int instruction = Instructions.decode(word);
+            int next = -1;
+            int kept = 0;
+            boolean diverged = false;
+            for (int i = 0; i < group.count; i++) {
+                int lane = group.lanes[i];
+                long own = read(position, lane);
+                execute(own == word ? instruction : Instructions.decode(own), lane);
+                if (halted[lane]) {
+                    continue;
+                }
+                if (kept == 0) {
+                    next = positions[lane];
+                }
+                if (positions[lane] == next) {
+                    group.lanes[kept++] = lane;
+                } else {
+                    Group other = new Group(positions[lane]);
+                    other.add(lane);
+                    schedule(other);
+                    diverged = true;
+                }
+            }
+            group.count = kept;
+            if (kept == 0) {
+                return;
+            }
+            group.position = next;
+            group.alone = kept == 1 ? group.alone + 1 : 0;
+            if (diverged) {
+                break;
+            }
+        }
+        schedule(group);
+    }
+
+    private void schedule(Group group) {
+        Group other = waiting.get(group.position);
+        if (other == null) {
+            waiting.put(group.position, group);
+            ready.add(group);
+            return;
+        }
+        for (int i = 0; i < group.count; i++) {
+            other.add(group.lanes[i]);
+        }
+        other.alone = 0;
+    }
+
+    private void splitOff(int lane) {
+        long[] codes = new long[(int) sizes[lane]];
+        for (int address = 0; address < codes.length; address++) {
+            codes[address] = cells[address * lanes + lane];
+        }
+        IntcodeMachine machine = IntcodeMachine.resume(codes, positions[lane], relativeBases[lane]);
+        for (int i = consumed[lane]; i < inputs[lane].length; i++) {
+            machine.input(inputs[lane][i]);
+        }
+        IntcodeMachine.State state;
+        while ((state = machine.run()) == IntcodeMachine.State.OUTPUT) {
+            outputs[lane].add(machine.getOutput());
+        }
+        if (state == IntcodeMachine.State.NEEDS_INPUT) {
+            throw new IllegalStateException("lane " + lane + " needs more than " + inputs[lane].length + " inputs");
+        }
+        halted[lane] = true;
+        splitOff++;
+    }
+
+    private void execute(int instruction, int lane) {
+        int position = positions[lane];
+        switch (Instructions.opcode(instruction)) {
+            case 1:
+                setValue(instruction, lane, 3, readParameter(instruction, lane, 1) + readParameter(instruction, lane, 2));
+                positions[lane] = position + 4;
+                break;
+            case 2:
+                setValue(instruction, lane, 3, readParameter(instruction, lane, 1) * readParameter(instruction, lane, 2));
+                positions[lane] = position + 4;
+                break;
+            case 3:
+                if (consumed[lane] == inputs[lane].length) {
+                    throw new IllegalStateException("lane " + lane + " needs more than " + consumed[lane] + " inputs");
+                }
+                setValue(instruction, lane, 1, inputs[lane][consumed[lane]++]);
+                positions[lane] = position + 2;
+                break;
+            case 4:
+                outputs[lane].add(readParameter(instruction, lane, 1));
+                positions[lane] = position + 2;
+                break;
+            case 5:
+                positions[lane] = readParameter(instruction, lane, 1) != 0 ? IntcodeMachine.jumpTarget(readParameter(instruction, lane, 2)) : position + 3;
+                break;
+            case 6:
+                positions[lane] = readParameter(instruction, lane, 1) == 0 ? IntcodeMachine.jumpTarget(readParameter(instruction, lane, 2)) : position + 3;
+                break;
+            case 7:
+                setValue(instruction, lane, 3, readParameter(instruction, lane, 1) < readParameter(instruction, lane, 2) ? 1 : 0);
+                positions[lane] = position + 4;
+                break;
+            case 8:
+                setValue(instruction, lane, 3, readParameter(instruction, lane, 1) == readParameter(instruction, lane, 2) ? 1 : 0);
+                positions[lane] = position + 4;
+                break;
+            case 9:
+                relativeBases[lane] += readParameter(instruction, lane, 1);
+                positions[lane] = position + 2;
+                break;
+            case 99:
+                halted[lane] = true;
+                break;
+            default:
+                throw new IllegalStateException("unknown code (" + read(position, lane) + ")");
+        }
+        if (positions[lane] >= sizes[lane]) {
+            halted[lane] = true;
+        }
+    }
+
+    private long read(long address, int lane) {
+        if (address >= 0 && address < capacity) {
+            return cells[(int) address * lanes + lane];
+        }
+        if (address < 0) {
+            throw new IllegalStateException("read(" + address + ")");
+        }
+        return 0L;
+    }
+
+    private void write(long address, int lane, long value) {
+        if (address < 0) {
+            throw new IllegalStateException("write(" + address + ")");
+        }
+        if (address >= capacity) {
+            grow(address);
+        }
+        cells[(int) address * lanes + lane] = value;
+        if (address >= sizes[lane]) {
+            sizes[lane] = address + 1;
+        }
+    }
+
+    private void grow(long address) {
+        long newCapacity = Math.max(address + 1, (long) capacity << 1);
+        if (newCapacity * lanes > MAX_CELLS) {
+            newCapacity = MAX_CELLS / lanes;
+            if (address >= newCapacity) {
+                throw new IllegalStateException("write(" + address + ")");
+            }
+        }
+        cells = Arrays.copyOf(cells, (int) newCapacity * lanes);
+        capacity = (int) newCapacity;
+    }
+
+    private long address(int instruction, int lane, int offset) {
+        int position = positions[lane];
+        switch (Instructions.mode(instruction, offset)) {
+            case 0:
+                return read(position + offset, lane);
+            case 1:
+                return position + offset;
+            case 2:
+                return relativeBases[lane] + read(position + offset, lane);
+            default:
+                throw new IllegalStateException("mode(" + Instructions.mode(instruction, offset) + ")");
+        }
+    }
+
+    private long readParameter(int instruction, int lane, int offset) {
+        return read(address(instruction, lane, offset), lane);
+    }
+
+    private void setValue(int instruction, int lane, int offset, long value) {
+        write(address(instruction, lane, offset), lane, value);
+    }
+
+    /**
+     * Lanes standing at the same instruction pointer.
+     */
+    private static final class Group {
+        private int position;
+        private int[] lanes = new int[4];
+        private int count;
+        // Steps run in a row with a single lane.
+        private int alone;
+
+        private Group(int position) {
+            this.position = position;
+        }
+
+        private void add(int lane) {
+            if (count == lanes.length) {
+                lanes = Arrays.copyOf(lanes, count << 1);
+            }
+            lanes[count++] = lane;
+        }
+    }
+}
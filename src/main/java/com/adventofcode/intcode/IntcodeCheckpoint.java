@@ -0,0 +1,103 @@
+package com.adventofcode.intcode;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Whole machine state in a file, so that a long exploration such as the Day 25 droid can stop and resume later, or in
+ * several processes at once, from the same point. The file holds fixed width little-endian longs after a header, so
+ * saving and loading are bulk copies between one buffer and the memory arrays. Nothing stays mapped or open: a file
+ * can be saved over while machines loaded from it run, and is replaced in one move so readers never see half of it.
+ * <p>
+ * A checkpoint holds the memory, instruction pointer, relative base, last output and pending inputs. It does not hold
+ * compiled code, a loaded machine compiles again or finds the code compiled ahead of time, nor a profiler or recorder.
+ */
+public final class IntcodeCheckpoint {
+    private static final int MAGIC = 0x49434350;
+    private static final int VERSION = 1;
+    private static final int HEADER = 16;
+
+    private IntcodeCheckpoint() {
+    }
+
+    /**
+     * Writes the state of the machine to a file next to the given one, forces it to the storage device, then moves it
+     * over the given file.
+     */
+    public static void save(IntcodeMachine machine, Path path) throws IOException {
+        long longs = machine.savedLongs();
+        long bytes = HEADER + longs * Long.BYTES;
+        if (bytes > Integer.MAX_VALUE) {
+            throw new IllegalStateException("checkpoint of " + bytes + " bytes");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(longs);
+        machine.save(buffer.asLongBuffer());
+        Path directory = path.toAbsolutePath().getParent();
+        Path temporary = Files.createTempFile(directory, path.getFileName().toString(), ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                buffer.rewind();
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Returns a new machine in the state saved in the file.
+     *
+     * @throws IOException if the file is not a checkpoint, or a truncated or corrupt one
+     */
+    public static IntcodeMachine load(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long bytes = channel.size();
+            if (bytes < HEADER || bytes > Integer.MAX_VALUE) {
+                throw new IOException("not an Intcode checkpoint: " + path);
+            }
+            buffer = ByteBuffer.allocate((int) bytes).order(ByteOrder.LITTLE_ENDIAN);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("truncated checkpoint: " + path);
+                }
+            }
+        }
+        buffer.flip();
+        if (buffer.getInt() != MAGIC) {
+            throw new IOException("not an Intcode checkpoint: " + path);
+        }
+        int version = buffer.getInt();
+        if (version != VERSION) {
+            throw new IOException("unsupported checkpoint version " + version + ": " + path);
+        }
+        long longs = buffer.getLong();
+        if (HEADER + longs * Long.BYTES != buffer.capacity()) {
+            throw new IOException("truncated checkpoint: " + path);
+        }
+        LongBuffer in = buffer.asLongBuffer();
+        IntcodeMachine machine;
+        try {
+            machine = IntcodeMachine.load(in);
+        } catch (BufferUnderflowException | IllegalStateException e) {
+            throw new IOException("corrupt checkpoint: " + path, e);
+        }
+        if (in.hasRemaining()) {
+            throw new IOException("corrupt checkpoint: " + path);
+        }
+        return machine;
+    }
+}
@@ -0,0 +1,585 @@
+package com.adventofcode.intcode;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Resumable Intcode machine. {@link #run()} executes until the program needs an input that has not been provided yet,
+ * produces an output, or halts, and can be called again to resume from there.
+ * <p>
+ * {@link #fork()} and {@link #snapshot()} copy the whole machine state, memory being shared copy-on-write, so that
+ * exploration code can branch from a state instead of replaying the inputs that led to it.
+ */
+public class IntcodeMachine {
+    private static final int COMPILE_THRESHOLD = 20_000;
+    private static final int MAX_COMPILATIONS = 8;
+    private static final int MAX_INVALIDATIONS = 3;
+    // Instructions run between two deadline checks of a limited run.
+    private static final long DEADLINE_SLICE = 1 << 16;
+
+    private final Memory memory;
+    private final LongQueue inputs;
+    private int position;
+    long relativeBase;
+    private long output;
+    private boolean halted;
+    // Instructions left before the run pauses, compiled code reads and decrements it too.
+    long fuel = Long.MAX_VALUE;
+
+    // Threshold set by the caller, the one in use drops to zero when the machine gives up compiling.
+    private int configuredThreshold = COMPILE_THRESHOLD;
+    private int compileThreshold = COMPILE_THRESHOLD;
+    private int interpreted;
+    private int compilations;
+    private int invalidations;
+    private int[] seeds = new int[0];
+    private CompiledRegion compiled;
+    // Compiled ahead of time: the machine keeps it rather than compiling the hot spots itself.
+    private boolean precompiled;
+    private Profiler profiler;
+    private TraceRecorder recorder;
+
+    public IntcodeMachine(long[] codes) {
+        this(new Memory(codes));
+    }
+
+    /**
+     * Machine running a copy of the image, which {@link #reset(IntcodeProgram)} restores cheaply.
+     */
+    public IntcodeMachine(IntcodeProgram program) {
+        this(new Memory(program));
+    }
+
+    private IntcodeMachine(Memory memory) {
+        this.memory = memory;
+        this.inputs = new LongQueue();
+        usePrecompiled(PrecompiledBlocks.lookup(memory));
+    }
+
+    private IntcodeMachine(IntcodeMachine other) {
+        this.memory = other.memory.fork();
+        this.inputs = new LongQueue(other.inputs);
+        this.position = other.position;
+        this.relativeBase = other.relativeBase;
+        this.output = other.output;
+        this.halted = other.halted;
+        this.configuredThreshold = other.configuredThreshold;
+        this.compileThreshold = other.compileThreshold;
+        this.interpreted = other.interpreted;
+        this.compilations = other.compilations;
+        this.invalidations = other.invalidations;
+        this.seeds = other.seeds;
+        this.compiled = other.compiled;
+        this.precompiled = other.precompiled;
+    }
+
+    /**
+     * Returns an independent copy of this machine, including its pending inputs.
+     */
+    public IntcodeMachine fork() {
+        return new IntcodeMachine(this);
+    }
+
+    public Snapshot snapshot() {
+        return new Snapshot(fork());
+    }
+
+    public Memory getMemory() {
+        return memory;
+    }
+
+    /**
+     * Number of interpreted instructions after which the code around the instruction pointer is compiled, zero
+     * disables compilation. Code compiled ahead of time runs either way.
+     */
+    public void setCompileThreshold(int compileThreshold) {
+        this.configuredThreshold = compileThreshold;
+        this.compileThreshold = compileThreshold;
+    }
+
+    boolean isCompiled() {
+        return compiled != null;
+    }
+
+    /**
+     * Profiles the instructions run from now on, null stops profiling. A profiled machine does not use compiled code.
+     * Forks are not profiled.
+     */
+    public void setProfiler(Profiler profiler) {
+        this.profiler = profiler;
+        if (profiler != null && compiled != null) {
+            memory.clearCode();
+            compiled = null;
+            precompiled = false;
+        }
+    }
+
+    public void input(long value) {
+        if (recorder != null) {
+            recorder.input(this, value);
+        }
+        inputs.add(value);
+        if (profiler != null) {
+            profiler.inputReceived();
+        }
+    }
+
+    public long getOutput() {
+        return output;
+    }
+
+    public boolean isHalted() {
+        return halted;
+    }
+
+    /**
+     * Runs the program to completion, asking the supplier whenever it needs an input.
+     */
+    public long[] run(LongSupplier input, LongConsumer output) {
+        while (true) {
+            switch (run()) {
+                case NEEDS_INPUT:
+                    input(input.getAsLong());
+                    break;
+                case OUTPUT:
+                    output.accept(this.output);
+                    break;
+                case HALTED:
+                    return memory.toArray();
+            }
+        }
+    }
+
+    /**
+     * Runs like {@link #run()} but returns {@link State#PAUSED} once the given number of instructions ran or the
+     * timeout elapsed, whichever comes first. A paused machine resumes where it stopped on the next run.
+     */
+    public State run(long maxInstructions, long timeout, TimeUnit unit) {
+        if (maxInstructions < 0) {
+            throw new IllegalArgumentException("maxInstructions " + maxInstructions);
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        long remaining = maxInstructions;
+        try {
+            while (true) {
+                long slice = Math.min(remaining, DEADLINE_SLICE);
+                fuel = slice;
+                State state = run();
+                remaining -= slice - fuel;
+                if (state != State.PAUSED) {
+                    return state;
+                }
+                if (remaining == 0 || System.nanoTime() - deadline >= 0) {
+                    return State.PAUSED;
+                }
+            }
+        } finally {
+            fuel = Long.MAX_VALUE;
+        }
+    }
+
+    public State run() {
+        try {
+            return execute();
+        } finally {
+            // Memory only grows during a run: its size on the way out is the largest it reached.
+            if (profiler != null) {
+                profiler.memory(memory.allocated());
+            }
+        }
+    }
+
+    private State execute() {
+        if (halted) {
+            return State.HALTED;
+        }
+        while (position < memory.size()) {
+            if (fuel == 0) {
+                return State.PAUSED;
+            }
+            if (profiler == null) {
+                if (compiled != null) {
+                    if (memory.codeModified) {
+                        invalidate();
+                    } else if (compiled.isEntry(position)) {
+                        // Compiled code hands back its entry when the fuel left does not cover the block: the
+                        // interpreter then runs it one instruction at a time, or pauses if no fuel is left at all.
+                        int next = compiled.execute(memory, this, position);
+                        if (next != position || fuel == 0) {
+                            position = next;
+                            continue;
+                        }
+                    }
+                }
+                // A threshold of zero stops the count, which would otherwise wrap around and compile after all.
+                if (compileThreshold > 0 && ++interpreted >= compileThreshold) {
+                    compile();
+                    continue;
+                }
+            }
+
+            int instruction = memory.decode(position);
+            fuel--;
+            if (profiler != null) {
+                profiler.instruction(position, Instructions.opcode(instruction));
+            }
+
+            switch (Instructions.opcode(instruction)) {
+                case 1: {
+                    long value1 = readParameter(instruction, 1);
+                    long value2 = readParameter(instruction, 2);
+                    setValue(instruction, 3, value1 + value2);
+                    position += 4;
+                    break;
+                }
+                case 2: {
+                    long value1 = readParameter(instruction, 1);
+                    long value2 = readParameter(instruction, 2);
+                    setValue(instruction, 3, value1 * value2);
+                    position += 4;
+                    break;
+                }
+                case 3: {
+                    if (inputs.isEmpty()) {
+                        fuel++;
+                        if (profiler != null) {
+                            profiler.blocked(position);
+                        }
+                        return State.NEEDS_INPUT;
+                    }
+                    setValue(instruction, 1, inputs.poll());
+                    position += 2;
+                    break;
+                }
+                case 4: {
+                    output = readParameter(instruction, 1);
+                    position += 2;
+                    if (recorder != null) {
+                        recorder.output(output);
+                    }
+                    return State.OUTPUT;
+                }
+                // Opcode 5 is jump-if-true: if the first parameter is non-zero, it sets the instruction pointer to the
+                // value from the second parameter. Otherwise, it does nothing.
+                case 5: {
+                    long value1 = readParameter(instruction, 1);
+                    long value2 = readParameter(instruction, 2);
+                    if (profiler != null) {
+                        profiler.branch(position, value1 != 0);
+                    }
+                    if (value1 != 0) {
+                        position = jumpTarget(value2);
+                    } else {
+                        position += 3;
+                    }
+                    break;
+                }
+                // Opcode 6 is jump-if-false: if the first parameter is zero, it sets the instruction pointer to the
+                // value from the second parameter. Otherwise, it does nothing.
+                case 6: {
+                    long value1 = readParameter(instruction, 1);
+                    long value2 = readParameter(instruction, 2);
+                    if (profiler != null) {
+                        profiler.branch(position, value1 == 0);
+                    }
+                    if (value1 == 0) {
+                        position = jumpTarget(value2);
+                    } else {
+                        position += 3;
+                    }
+                    break;
+                }
+                // Opcode 7 is less than: if the first parameter is less than the second parameter, it stores 1 in the
+                // position given by the third parameter. Otherwise, it stores 0.
+                case 7: {
+                    long value1 = readParameter(instruction, 1);
+                    long value2 = readParameter(instruction, 2);
+                    setValue(instruction, 3, value1 < value2 ? 1 : 0);
+                    position += 4;
+                    break;
+                }
+                // Opcode 8 is equals: if the first parameter is equal to the second parameter, it stores 1 in the
+                // position given by the third parameter. Otherwise, it stores 0.
+                case 8: {
+                    long value1 = readParameter(instruction, 1);
+                    long value2 = readParameter(instruction, 2);
+                    setValue(instruction, 3, value1 == value2 ? 1 : 0);
+                    position += 4;
+                    break;
+                }
+                // Opcode 9 adjusts the relative base by the value of its only parameter. The relative base increases
+                // (or decreases, if the value is negative) by the value of the parameter.
+                case 9: {
+                    long value1 = readParameter(instruction, 1);
+                    relativeBase += value1;
+                    position += 2;
+                    break;
+                }
+                case 99:
+                    halted = true;
+                    return State.HALTED;
+                default:
+                    throw new IllegalStateException("unknown code (" + memory.read(position) + ")");
+            }
+        }
+
+        halted = true;
+        return State.HALTED;
+    }
+
+    /**
+     * Returns the address a jump goes to, which the compiled tiers take from here too.
+     *
+     * @throws IllegalStateException if the address is negative or does not fit an instruction pointer
+     */
+    static int jumpTarget(long address) {
+        if (address < 0 || address > Integer.MAX_VALUE) {
+            throw new IllegalStateException("jump(" + address + ")");
+        }
+        return (int) address;
+    }
+
+    /**
+     * Compiles the blocks reachable from every address where the interpreter got hot so far. The machine gives up on
+     * compiling after a few rounds, or when the program keeps modifying its compiled code.
+     */
+    private void compile() {
+        interpreted = 0;
+        if (precompiled) {
+            return;
+        }
+        if (compilations >= MAX_COMPILATIONS || invalidations >= MAX_INVALIDATIONS) {
+            compileThreshold = 0;
+            return;
+        }
+        compilations++;
+        seeds = Arrays.copyOf(seeds, seeds.length + 1);
+        seeds[seeds.length - 1] = position;
+        if (compiled != null) {
+            memory.clearCode();
+        }
+        compiled = BlockCompiler.compile(memory, seeds);
+        if (compiled != null) {
+            compiled.install(memory);
+        }
+    }
+
+    /**
+     * Records the inputs and outputs from now on, null stops recording. Forks are not recorded.
+     */
+    public void setRecorder(TraceRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Writes what a machine needs to resume from here: memory, instruction pointer, relative base, last output and
+     * pending inputs. Compiled code and profiling are left out.
+     */
+    void save(DataOutput out) throws IOException {
+        VarLongs.write(out, position);
+        VarLongs.write(out, relativeBase);
+        VarLongs.write(out, output);
+        out.writeBoolean(halted);
+        long[] pending = inputs.toArray();
+        VarLongs.write(out, pending.length);
+        for (long value : pending) {
+            VarLongs.write(out, value);
+        }
+        memory.save(out);
+    }
+
+    /**
+     * Reads back a machine written by {@link #save(DataOutput)}.
+     */
+    static IntcodeMachine load(DataInput in) throws IOException {
+        int position = (int) VarLongs.read(in);
+        long relativeBase = VarLongs.read(in);
+        long output = VarLongs.read(in);
+        boolean halted = in.readBoolean();
+        long[] pending = new long[(int) VarLongs.read(in)];
+        for (int i = 0; i < pending.length; i++) {
+            pending[i] = VarLongs.read(in);
+        }
+        IntcodeMachine machine = new IntcodeMachine(Memory.load(in));
+        machine.position = position;
+        machine.relativeBase = relativeBase;
+        machine.output = output;
+        machine.halted = halted;
+        for (long value : pending) {
+            machine.inputs.add(value);
+        }
+        return machine;
+    }
+
+    /**
+     * Machine on the memory of a run started elsewhere, such as a lane split off an {@link IntcodeBatch}.
+     */
+    static IntcodeMachine resume(long[] codes, int position, long relativeBase) {
+        IntcodeMachine machine = new IntcodeMachine(codes);
+        machine.position = position;
+        machine.relativeBase = relativeBase;
+        return machine;
+    }
+
+    /**
+     * Number of longs {@link #save(LongBuffer)} puts.
+     */
+    long savedLongs() {
+        return 5L + inputs.size() + memory.savedLongs();
+    }
+
+    /**
+     * Puts the same state as {@link #save(DataOutput)}, as fixed width longs.
+     */
+    void save(LongBuffer out) {
+        out.put(position);
+        out.put(relativeBase);
+        out.put(output);
+        out.put(halted ? 1 : 0);
+        out.put(inputs.size());
+        out.put(inputs.toArray());
+        memory.save(out);
+    }
+
+    /**
+     * Reads back a machine put by {@link #save(LongBuffer)}.
+     */
+    static IntcodeMachine load(LongBuffer in) {
+        long position = in.get();
+        if (position < 0 || position > Integer.MAX_VALUE) {
+            throw new IllegalStateException("position " + position);
+        }
+        long relativeBase = in.get();
+        long output = in.get();
+        boolean halted = in.get() != 0;
+        long[] pending = new long[Memory.count(in, 1)];
+        in.get(pending);
+        IntcodeMachine machine = new IntcodeMachine(Memory.load(in));
+        machine.position = (int) position;
+        machine.relativeBase = relativeBase;
+        machine.output = output;
+        machine.halted = halted;
+        for (long value : pending) {
+            machine.inputs.add(value);
+        }
+        return machine;
+    }
+
+    /**
+     * Puts the machine back in the state of a new machine on the image: only the memory written since the last reset
+     * is restored, pending inputs are dropped, the instruction pointer and relative base go back to zero. Compiled
+     * code is kept as long as it was compiled from the code of the image.
+     */
+    public void reset(IntcodeProgram image) {
+        memory.reset(image);
+        inputs.clear();
+        position = 0;
+        relativeBase = 0;
+        output = 0;
+        halted = false;
+        fuel = Long.MAX_VALUE;
+        interpreted = 0;
+        if (compiled != null && compiled.matches(memory)) {
+            compiled.install(memory);
+        } else {
+            memory.clearCode();
+            compiled = null;
+            precompiled = false;
+            compileThreshold = configuredThreshold;
+            compilations = 0;
+            invalidations = 0;
+            seeds = new int[0];
+            if (profiler == null) {
+                usePrecompiled(PrecompiledBlocks.lookup(memory));
+            }
+        }
+    }
+
+    /**
+     * Runs the given blocks, compiled ahead of time from this machine's code, from now on. Returns false and changes
+     * nothing if they were compiled from some other code.
+     */
+    boolean usePrecompiled(PrecompiledBlocks blocks) {
+        return usePrecompiled(blocks.regionFor(memory));
+    }
+
+    private boolean usePrecompiled(CompiledRegion region) {
+        if (region == null) {
+            return false;
+        }
+        if (compiled != null) {
+            memory.clearCode();
+        }
+        compiled = region;
+        compiled.install(memory);
+        precompiled = true;
+        return true;
+    }
+
+    private void invalidate() {
+        memory.clearCode();
+        compiled = null;
+        precompiled = false;
+        invalidations++;
+    }
+
+    private void setValue(int instruction, int offset, long value) {
+        switch (Instructions.mode(instruction, offset)) {
+            case 0:
+                memory.write(memory.read(position + offset), value);
+                break;
+            case 1:
+                memory.write(position + offset, value);
+                break;
+            case 2:
+                memory.write(relativeBase + memory.read(position + offset), value);
+                break;
+            default:
+                throw new IllegalStateException("setValue(" + Instructions.mode(instruction, offset) + ")");
+        }
+    }
+
+    private long readParameter(int instruction, int offset) {
+        switch (Instructions.mode(instruction, offset)) {
+            case 0:
+                return memory.read(memory.read(position + offset));
+            case 1:
+                return memory.read(position + offset);
+            case 2:
+                return memory.read(relativeBase + memory.read(position + offset));
+            default:
+                throw new IllegalStateException("readParameter(" + Instructions.mode(instruction, offset) + ")");
+        }
+    }
+
+    public enum State {
+        NEEDS_INPUT,
+        OUTPUT,
+        PAUSED,
+        HALTED
+    }
+
+    /**
+     * Frozen machine state, held by a private fork that never runs, so it can be restored any number of times from any
+     * thread. Restoring forks it under the snapshot's lock, since forking updates the copy-on-write state of its
+     * memory. The restored machines share its decoded instruction cache, whose entries only ever go from zero to the
+     * decoding of cells nobody writes while they are shared: concurrent writers store the same int.
+     */
+    public static final class Snapshot {
+        private final IntcodeMachine machine;
+
+        private Snapshot(IntcodeMachine machine) {
+            this.machine = machine;
+        }
+
+        public synchronized IntcodeMachine restore() {
+            return machine.fork();
+        }
+    }
+}
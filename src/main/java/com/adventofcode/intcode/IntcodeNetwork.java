@@ -0,0 +1,140 @@
+package com.adventofcode.intcode;
+
+import java.util.Objects;
+
+/**
+ * Single-threaded simulation of the Day 23 network: one resumable machine per address, packets of three outputs
+ * delivered straight into the input queue of their destination.
+ * <p>
+ * The network runs in rounds. Each round visits every node in address order: a node with no pending input is given
+ * -1, then runs until it waits for input again. Packets sent to a node later in the order are read in the same round,
+ * the others in the next one. The network is idle after a round that started with every input queue empty and in
+ * which no node output anything, not even part of a packet. Results are therefore reproducible and do not depend on any timing.
+ */
+public class IntcodeNetwork {
+    public static final long NAT = 255;
+
+    private final Node[] nodes;
+    private Packet natPacket;
+    private long rounds;
+    private long packets;
+
+    public IntcodeNetwork(IntcodeProgram program, int size) {
+        nodes = new Node[size];
+        for (int address = 0; address < size; address++) {
+            nodes[address] = new Node(new IntcodeMachine(program.copy()));
+            nodes[address].machine.input(address);
+            nodes[address].pending = true;
+        }
+    }
+
+    /**
+     * Runs until a packet is sent to the NAT and returns it.
+     *
+     * @throws IllegalStateException if the network goes idle first
+     */
+    public Packet runUntilNat() {
+        while (natPacket == null) {
+            if (round()) {
+                throw idleWithoutNatPacket();
+            }
+        }
+        return natPacket;
+    }
+
+    /**
+     * Runs with the NAT monitoring the network: whenever the network is idle, the NAT sends the last packet it
+     * received to address 0. Returns the first Y value the NAT delivers twice in a row.
+     *
+     * @throws IllegalStateException if the network goes idle before the NAT received any packet
+     */
+    public long runNat() {
+        Long previousY = null;
+        while (true) {
+            if (round()) {
+                if (natPacket == null) {
+                    throw idleWithoutNatPacket();
+                }
+                if (Objects.equals(previousY, natPacket.getY())) {
+                    return previousY;
+                }
+                previousY = natPacket.getY();
+                deliver(new Packet(0, natPacket.getX(), natPacket.getY()));
+            }
+        }
+    }
+
+    private IllegalStateException idleWithoutNatPacket() {
+        return new IllegalStateException("network idle after " + rounds + " rounds without any packet for the NAT");
+    }
+
+    /**
+     * Runs one round and returns whether the network was idle during it.
+     */
+    private boolean round() {
+        rounds++;
+        boolean empty = true;
+        for (Node node : nodes) {
+            empty &= !node.pending;
+        }
+        boolean silent = true;
+        for (Node node : nodes) {
+            if (!node.pending) {
+                node.machine.input(-1);
+            }
+            node.pending = false;
+            silent &= !run(node);
+        }
+        return empty && silent;
+    }
+
+    /**
+     * Runs the node until it waits for input and returns whether it output any value.
+     */
+    private boolean run(Node node) {
+        boolean active = false;
+        while (node.machine.run() == IntcodeMachine.State.OUTPUT) {
+            active = true;
+            node.output[node.outputs++] = node.machine.getOutput();
+            if (node.outputs == 3) {
+                node.outputs = 0;
+                packets++;
+                deliver(new Packet(node.output[0], node.output[1], node.output[2]));
+            }
+        }
+        return active;
+    }
+
+    private void deliver(Packet packet) {
+        if (packet.getAddress() == NAT) {
+            natPacket = packet;
+        } else if (packet.getAddress() >= 0 && packet.getAddress() < nodes.length) {
+            Node node = nodes[(int) packet.getAddress()];
+            node.machine.input(packet.getX());
+            node.machine.input(packet.getY());
+            node.pending = true;
+        }
+    }
+
+    public long getRounds() {
+        return rounds;
+    }
+
+    /**
+     * Number of packets sent by the nodes, the NAT's own packets excluded.
+     */
+    public long getPackets() {
+        return packets;
+    }
+
+    private static final class Node {
+        private final IntcodeMachine machine;
+        private final long[] output = new long[3];
+        private int outputs;
+        private boolean pending;
+
+        private Node(IntcodeMachine machine) {
+            this.machine = machine;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package com.adventofcode.intcode;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memoizes "run the program on these inputs, collect its outputs" for query programs such as the Day 19 drone. Every
+ * miss runs a machine reset to the image, reused from one miss to the next, so no state carries over from one query to
+ * the next. A program that asks for more inputs than the query holds, or runs more instructions than the budget without
+ * an output, is not a query program and fails with an {@link IllegalStateException}.
+ * <p>
+ * Answers live in a bounded two-way set associative cache keyed by the input values themselves, without boxing: a
+ * query evicts the least recently used of the two entries of its set. An oracle is not thread-safe.
+ */
+public class IntcodeOracle {
+    private static final long DEFAULT_BUDGET = 100_000_000L;
+
+    private final IntcodeProgram program;
+    private final long budget;
+    private final IntcodePool pool = new IntcodePool(1);
+    private final int mask;
+    private final long[][] keys;
+    private final long[][] values;
+    // One bit per set: the way used last.
+    private final boolean[] recent;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    public IntcodeOracle(IntcodeProgram program, int capacity) {
+        this(program, capacity, DEFAULT_BUDGET);
+    }
+
+    public IntcodeOracle(IntcodeProgram program, int capacity, long budget) {
+        this.program = program;
+        this.budget = budget;
+        int sets = Integer.highestOneBit(Math.max(capacity / 2, 1));
+        this.mask = sets - 1;
+        this.keys = new long[sets * 2][];
+        this.values = new long[sets * 2][];
+        this.recent = new boolean[sets];
+    }
+
+    private static int hash(long[] inputs) {
+        long hash = 0;
+        for (long input : inputs) {
+            hash = (hash + input) * 0x9E3779B97F4A7C15L;
+        }
+        return (int) (hash ^ hash >>> 32);
+    }
+
+    /**
+     * Returns the outputs of the program for the given inputs. The returned array is shared by later identical
+     * queries, callers must not modify it.
+     */
+    public long[] query(long... inputs) {
+        int set = hash(inputs) & mask;
+        int way = set << 1;
+        for (int i = 0; i < 2; i++) {
+            if (Arrays.equals(keys[way + i], inputs)) {
+                hits++;
+                recent[set] = i == 1;
+                return values[way + i];
+            }
+        }
+        misses++;
+        long[] outputs = run(inputs);
+        int victim = recent[set] ? way : way + 1;
+        if (keys[victim] != null) {
+            evictions++;
+        }
+        keys[victim] = inputs.clone();
+        values[victim] = outputs;
+        recent[set] = victim == way + 1;
+        return outputs;
+    }
+
+    /**
+     * Returns the first output of the program for the given inputs.
+     */
+    public long first(long... inputs) {
+        long[] outputs = query(inputs);
+        if (outputs.length == 0) {
+            throw new IllegalStateException("no output for " + Arrays.toString(inputs));
+        }
+        return outputs[0];
+    }
+
+    private long[] run(long[] inputs) {
+        IntcodeMachine machine = pool.acquire(program);
+        try {
+            for (long input : inputs) {
+                machine.input(input);
+            }
+            LongQueue outputs = new LongQueue();
+            while (true) {
+                switch (machine.run(budget, Long.MAX_VALUE, TimeUnit.NANOSECONDS)) {
+                    case OUTPUT:
+                        outputs.add(machine.getOutput());
+                        break;
+                    case HALTED:
+                        return outputs.toArray();
+                    case NEEDS_INPUT:
+                        throw new IllegalStateException("needs more than " + inputs.length + " inputs");
+                    case PAUSED:
+                        throw new IllegalStateException("runs more than " + budget + " instructions without output");
+                }
+            }
+        } finally {
+            pool.release(program, machine);
+        }
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public double getHitRate() {
+        long queries = hits + misses;
+        return queries == 0 ? 0 : (double) hits / queries;
+    }
+}
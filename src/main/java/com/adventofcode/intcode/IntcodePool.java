@@ -0,0 +1,75 @@
+package com.adventofcode.intcode;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reusable machines for workloads running the same image over and over, such as the Day 19 probes or the Day 7
+ * amplifiers. A released machine is reset to the image, which only copies back the memory the run wrote and keeps the
+ * code compiled on earlier runs, then handed out again by the next {@link #acquire(IntcodeProgram)}.
+ * <p>
+ * Machines are pooled per image instance, as returned by {@link IntcodeProgram#of(String)}, and the images are weakly
+ * held so that the pool does not keep programs nobody uses anymore. At most {@code maxIdle} machines are kept per
+ * image, the others are dropped on release. A pool is thread-safe.
+ */
+public class IntcodePool {
+    private static final int DEFAULT_MAX_IDLE = 16;
+
+    private final int maxIdle;
+    private final LoadingCache<IntcodeProgram, Deque<IntcodeMachine>> idle;
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+
+    public IntcodePool() {
+        this(DEFAULT_MAX_IDLE);
+    }
+
+    public IntcodePool(int maxIdle) {
+        this.maxIdle = maxIdle;
+        this.idle = CacheBuilder.newBuilder().weakKeys().build(CacheLoader.from(program -> new ArrayDeque<>()));
+    }
+
+    /**
+     * Returns a machine in the state of a new machine on the image, to be given back with
+     * {@link #release(IntcodeProgram, IntcodeMachine)} once done with it.
+     */
+    public IntcodeMachine acquire(IntcodeProgram program) {
+        Deque<IntcodeMachine> machines = idle.getUnchecked(program);
+        IntcodeMachine machine;
+        synchronized (machines) {
+            machine = machines.pollLast();
+        }
+        if (machine == null) {
+            created.incrementAndGet();
+            return new IntcodeMachine(program);
+        }
+        reused.incrementAndGet();
+        return machine;
+    }
+
+    /**
+     * Resets the machine, whatever state it was left in, and keeps it for the next run of the image.
+     */
+    public void release(IntcodeProgram program, IntcodeMachine machine) {
+        machine.reset(program);
+        Deque<IntcodeMachine> machines = idle.getUnchecked(program);
+        synchronized (machines) {
+            if (machines.size() < maxIdle) {
+                machines.addLast(machine);
+            }
+        }
+    }
+
+    public long getCreated() {
+        return created.get();
+    }
+
+    public long getReused() {
+        return reused.get();
+    }
+}
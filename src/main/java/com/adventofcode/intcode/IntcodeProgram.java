@@ -0,0 +1,70 @@
+package com.adventofcode.intcode;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+
+import java.util.stream.Collectors;
+import java.util.stream.LongStream;
+
+/**
+ * Parsed, immutable Intcode program image. An image can be shared between threads; every run works on its own copy
+ * obtained through {@link #copy()}.
+ */
+public final class IntcodeProgram {
+    private static final LoadingCache<String, IntcodeProgram> CACHE = CacheBuilder.newBuilder()
+            .maximumSize(64)
+            .build(CacheLoader.from(IntcodeProgram::parse));
+
+    private final long[] codes;
+
+    private IntcodeProgram(long[] codes) {
+        this.codes = codes;
+    }
+
+    public static IntcodeProgram parse(String stringCodes) {
+        String[] split = stringCodes.split(",");
+        long[] codes = new long[split.length];
+        for (int i = 0; i < split.length; i++) {
+            codes[i] = Long.parseLong(split[i].trim());
+        }
+        return new IntcodeProgram(codes);
+    }
+
+    /**
+     * Returns the image for the given source, parsing it only the first time it is seen.
+     */
+    public static IntcodeProgram of(String stringCodes) {
+        return CACHE.getUnchecked(stringCodes);
+    }
+
+    public static IntcodeProgram of(long... codes) {
+        return new IntcodeProgram(codes.clone());
+    }
+
+    public int size() {
+        return codes.length;
+    }
+
+    public long get(int address) {
+        return codes[address];
+    }
+
+    public long[] copy() {
+        long[] memory = new long[codes.length];
+        System.arraycopy(codes, 0, memory, 0, codes.length);
+        return memory;
+    }
+
+    /**
+     * Copies the cells in [from, to) into the same cells of the target.
+     */
+    void copy(int from, int to, long[] target) {
+        System.arraycopy(codes, from, target, from, to - from);
+    }
+
+    @Override
+    public String toString() {
+        return LongStream.of(codes).mapToObj(Long::toString).collect(Collectors.joining(","));
+    }
+}
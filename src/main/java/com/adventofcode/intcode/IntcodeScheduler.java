@@ -0,0 +1,80 @@
+package com.adventofcode.intcode;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.function.LongConsumer;
+
+/**
+ * Runs many {@link IntcodeMachine}s cooperatively on the calling thread. A machine waiting for input is parked until
+ * a value is sent to it, outputs are handed to the task's consumer which usually sends them on to another task.
+ * <p>
+ * A scheduler is not thread-safe: several threads each run their own scheduler.
+ */
+public class IntcodeScheduler {
+    // Number of outputs a task may produce before yielding to the other ready tasks.
+    private static final int QUANTUM = 64;
+
+    private final Deque<Task> ready = new ArrayDeque<>();
+
+    public Task spawn(IntcodeMachine machine, LongConsumer output) {
+        Task task = new Task(machine, output);
+        task.schedule();
+        return task;
+    }
+
+    /**
+     * Runs ready tasks until every task has either halted or is waiting for an input nobody sent.
+     */
+    public void run() {
+        while (!ready.isEmpty()) {
+            Task task = ready.poll();
+            task.queued = false;
+            task.runSlice();
+        }
+    }
+
+    public class Task {
+        private final IntcodeMachine machine;
+        private final LongConsumer output;
+        private boolean queued;
+
+        private Task(IntcodeMachine machine, LongConsumer output) {
+            this.machine = machine;
+            this.output = output;
+        }
+
+        public IntcodeMachine getMachine() {
+            return machine;
+        }
+
+        public boolean isHalted() {
+            return machine.isHalted();
+        }
+
+        public void send(long value) {
+            machine.input(value);
+            schedule();
+        }
+
+        private void schedule() {
+            if (!queued && !machine.isHalted()) {
+                queued = true;
+                ready.add(this);
+            }
+        }
+
+        private void runSlice() {
+            for (int i = 0; i < QUANTUM; i++) {
+                switch (machine.run()) {
+                    case OUTPUT:
+                        output.accept(machine.getOutput());
+                        break;
+                    case NEEDS_INPUT:
+                    case HALTED:
+                        return;
+                }
+            }
+            schedule();
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.adventofcode.intcode;
+
+import com.adventofcode.intcode.analysis.LinearForm;
+import com.adventofcode.intcode.analysis.SymbolicExecution;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Inverse problems such as the Day 2 noun and verb: which values, patched into given cells of the image, make the
+ * program halt with a target value in cell 0. Every candidate runs a fresh machine from the shared, already parsed
+ * image.
+ * <p>
+ * Candidates are numbered in lexicographic order of their values, the first cell varying slowest, as nested loops
+ * would. A run that asks for input, fails, or exceeds the instruction budget is no match.
+ * <p>
+ * A search created by {@link #closedForm(IntcodeProgram, int...)} first runs a {@link SymbolicExecution}: when it finds
+ * cell 0 to be an affine function of the searched cells, the search solves it algebraically and runs no machine at
+ * all. Other programs fall back to running every candidate.
+ */
+public class IntcodeSearch {
+    private static final long DEFAULT_BUDGET = 10_000_000L;
+
+    private final IntcodeProgram program;
+    private final int[] addresses;
+    private final long budget;
+    private final boolean useClosedForm;
+    // Run on first use only: a search running machines never needs it.
+    private LinearForm closedForm;
+    private boolean symbolicRun;
+
+    /**
+     * Search running a machine for every candidate.
+     */
+    public IntcodeSearch(IntcodeProgram program, int... addresses) {
+        this(program, addresses, DEFAULT_BUDGET);
+    }
+
+    public IntcodeSearch(IntcodeProgram program, int[] addresses, long budget) {
+        this(program, addresses, budget, false);
+    }
+
+    public IntcodeSearch(IntcodeProgram program, int[] addresses, long budget, boolean useClosedForm) {
+        this.program = program;
+        this.budget = budget;
+        this.addresses = addresses;
+        this.useClosedForm = useClosedForm;
+    }
+
+    /**
+     * Search solving the closed form of the program when it has one, running machines otherwise.
+     */
+    public static IntcodeSearch closedForm(IntcodeProgram program, int... addresses) {
+        return new IntcodeSearch(program, addresses, DEFAULT_BUDGET, true);
+    }
+
+    /**
+     * Returns cell 0 as a function of the searched cells, if the program computes it without branching on them. Only
+     * a search created with {@code useClosedForm} solves it rather than running machines.
+     */
+    public synchronized Optional<LinearForm> getClosedForm() {
+        if (!symbolicRun) {
+            closedForm = SymbolicExecution.closedForm(program, 0, addresses, budget).orElse(null);
+            symbolicRun = true;
+        }
+        return Optional.ofNullable(closedForm);
+    }
+
+    /**
+     * Tries every value in [0, bound) for each cell, in order, and returns the first values producing the target.
+     */
+    public Optional<long[]> find(long target, long... bounds) {
+        long count = count(bounds);
+        Optional<LinearForm> form = useClosedForm ? getClosedForm() : Optional.empty();
+        if (form.isPresent()) {
+            return form.get().solve(target, bounds);
+        }
+        for (long index = 0; index < count; index++) {
+            long[] values = values(index, bounds);
+            if (matches(values, target)) {
+                return Optional.of(values);
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Same search as {@link #find(long, long...)} split into {@code tasks} interleaved slices run on the given
+     * executor. Once a slice finds a match, every slice stops at that candidate, so the result is the one of the
+     * serial search.
+     */
+    public Optional<long[]> find(long target, long[] bounds, ExecutorService executorService, int tasks) {
+        long count = count(bounds);
+        Optional<LinearForm> form = useClosedForm ? getClosedForm() : Optional.empty();
+        if (form.isPresent()) {
+            return form.get().solve(target, bounds);
+        }
+        AtomicLong found = new AtomicLong(Long.MAX_VALUE);
+
+        List<Future<?>> futures = new ArrayList<>();
+        for (int task = 0; task < tasks; task++) {
+            long first = task;
+            futures.add(executorService.submit(() -> {
+                for (long index = first; index < count && index < found.get(); index += tasks) {
+                    if (matches(values(index, bounds), target)) {
+                        found.accumulateAndGet(index, Math::min);
+                        return;
+                    }
+                }
+            }));
+        }
+
+        try {
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            futures.forEach(f -> f.cancel(true));
+        }
+
+        long index = found.get();
+        return index == Long.MAX_VALUE ? Optional.empty() : Optional.of(values(index, bounds));
+    }
+
+    private long count(long[] bounds) {
+        if (bounds.length != addresses.length) {
+            throw new IllegalArgumentException(bounds.length + " bounds for " + addresses.length + " cells");
+        }
+        long count = 1;
+        for (long bound : bounds) {
+            count = Math.multiplyExact(count, bound);
+        }
+        return count;
+    }
+
+    private static long[] values(long index, long[] bounds) {
+        long[] values = new long[bounds.length];
+        for (int i = bounds.length - 1; i >= 0; i--) {
+            values[i] = index % bounds[i];
+            index /= bounds[i];
+        }
+        return values;
+    }
+
+    private boolean matches(long[] values, long target) {
+        long[] memory = program.copy();
+        for (int i = 0; i < addresses.length; i++) {
+            memory[addresses[i]] = values[i];
+        }
+        IntcodeMachine machine = new IntcodeMachine(memory);
+        try {
+            IntcodeMachine.State state;
+            do {
+                state = machine.run(budget, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            } while (state == IntcodeMachine.State.OUTPUT);
+            return state == IntcodeMachine.State.HALTED && machine.getMemory().read(0) == target;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+}
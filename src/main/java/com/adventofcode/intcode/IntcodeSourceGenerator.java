@@ -0,0 +1,321 @@
+package com.adventofcode.intcode;
+
+import com.adventofcode.intcode.analysis.BasicBlock;
+import com.adventofcode.intcode.analysis.ProgramAnalysis;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Turns an Intcode image into the Java source of a {@link PrecompiledBlocks} class, so that a fixed program starts
+ * compiled instead of waiting for the interpreter to get hot. Every block statically reachable from the image, as
+ * found by {@link ProgramAnalysis}, is compiled the way {@link BlockCompiler} compiles hot blocks at run time: one
+ * static method per block, input, output and halt left to the interpreter. Self-modifying code and jumps to an
+ * address that starts no block fall back to the interpreter too.
+ * <p>
+ * The build runs {@link #main(String[])} with the {@code aot} profile, generating the classes of the Day 9, 17 and 25
+ * images and the {@code PrecompiledIndex} listing them.
+ */
+public final class IntcodeSourceGenerator {
+    private static final String PACKAGE = "com.adventofcode.intcode";
+    // Cases per dispatch method, keeps each one well under HotSpot's 8000 bytes huge method limit.
+    private static final int CASES_PER_METHOD = 256;
+    // Characters per string constant, well under the 65535 bytes limit of the constant pool.
+    private static final int CHUNK = 8192;
+
+    private final String className;
+    private final IntcodeProgram program;
+    private final Memory memory;
+    private final StringBuilder source = new StringBuilder();
+
+    private IntcodeSourceGenerator(String className, IntcodeProgram program) {
+        this.className = className;
+        this.program = program;
+        this.memory = new Memory(program.copy());
+    }
+
+    /**
+     * Usage: {@code IntcodeSourceGenerator <output directory> <class name>=<image file>...}
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            throw new IllegalArgumentException("usage: IntcodeSourceGenerator <output directory> <class name>=<image file>...");
+        }
+        Path directory = Paths.get(args[0], PACKAGE.split("\\."));
+        Files.createDirectories(directory);
+        List<String> classNames = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            int separator = args[i].indexOf('=');
+            if (separator < 0) {
+                throw new IllegalArgumentException(args[i]);
+            }
+            String className = args[i].substring(0, separator);
+            String image = new String(Files.readAllBytes(Paths.get(args[i].substring(separator + 1))), StandardCharsets.UTF_8);
+            write(directory.resolve(className + ".java"), generate(className, IntcodeProgram.parse(image.trim())));
+            classNames.add(className);
+        }
+        write(directory.resolve("PrecompiledIndex.java"), generateIndex(classNames));
+    }
+
+    private static void write(Path path, String content) throws IOException {
+        Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the source of the class compiled from the program.
+     */
+    public static String generate(String className, IntcodeProgram program) {
+        return new IntcodeSourceGenerator(className, program).generate();
+    }
+
+    /**
+     * Returns the source of the index listing the given generated classes.
+     */
+    public static String generateIndex(List<String> classNames) {
+        StringBuilder source = new StringBuilder();
+        source.append("package ").append(PACKAGE).append(";\n\n");
+        source.append("// Generated by IntcodeSourceGenerator, do not edit.\n");
+        source.append("final class PrecompiledIndex {\n");
+        source.append("    static final PrecompiledBlocks[] BLOCKS = {");
+        for (int i = 0; i < classNames.size(); i++) {
+            source.append(i == 0 ? "" : ", ").append("new ").append(classNames.get(i)).append("()");
+        }
+        source.append("};\n\n");
+        source.append("    private PrecompiledIndex() {\n");
+        source.append("    }\n");
+        source.append("}\n");
+        return source.toString();
+    }
+
+    private String generate() {
+        ProgramAnalysis analysis = ProgramAnalysis.analyze(program);
+        List<BasicBlock> blocks = analysis.getBlocks();
+        int[] seeds = new int[blocks.size() + 1];
+        for (int i = 0; i < blocks.size(); i++) {
+            seeds[i + 1] = blocks.get(i).getStart();
+        }
+        int[] ranges = withoutWritableCells(BlockCompiler.ranges(memory, seeds), analysis.getWritableCells());
+        int[] starts = new int[ranges.length / 2];
+        int[] lengths = new int[starts.length];
+        StringBuilder rangeValues = new StringBuilder();
+        StringBuilder codeValues = new StringBuilder();
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = ranges[2 * i];
+            for (int address = ranges[2 * i]; address < ranges[2 * i + 1]; address += BlockCompiler.length(opcode(address))) {
+                lengths[i]++;
+            }
+            append(rangeValues, ranges[2 * i]);
+            append(rangeValues, ranges[2 * i + 1]);
+            for (int address = ranges[2 * i]; address < ranges[2 * i + 1]; address++) {
+                append(codeValues, memory.read(address));
+            }
+        }
+
+        line(0, "package " + PACKAGE + ";");
+        line(0, "");
+        line(0, "// Generated by IntcodeSourceGenerator, do not edit.");
+        line(0, "final class " + className + " extends PrecompiledBlocks {");
+        constant("RANGES", rangeValues);
+        line(0, "");
+        constant("CODE", codeValues);
+        line(0, "");
+        line(1, className + "() {");
+        line(2, "super(parse(RANGES), parse(CODE));");
+        line(1, "}");
+        line(0, "");
+        line(1, "@Override");
+        line(1, "public int execute(Memory memory, IntcodeMachine machine, int ip) {");
+        line(2, "while (!memory.codeModified) {");
+        line(3, "int length = length(ip);");
+        line(3, "if (length == 0 || machine.fuel < length) {");
+        line(4, "return ip;");
+        line(3, "}");
+        line(3, "machine.fuel -= length;");
+        line(3, "ip = block(ip, memory, machine);");
+        line(2, "}");
+        line(2, "return ip;");
+        line(1, "}");
+        dispatch("length", "int ip", "ip", starts, i -> "return " + lengths[i] + ";", "return 0;");
+        dispatch("block", "int ip, Memory memory, IntcodeMachine machine", "ip, memory, machine", starts,
+                i -> "return b" + starts[i] + "(memory, machine);", "throw new IllegalStateException(\"block(\" + ip + \")\");");
+        for (int i = 0; i < starts.length; i++) {
+            block(ranges[2 * i], ranges[2 * i + 1]);
+        }
+        line(0, "}");
+        return source.toString();
+    }
+
+    /**
+     * Drops the blocks holding cells the program may write: the analysis also decodes data that looks like code,
+     * and a write to a compiled cell would send the whole machine back to the interpreter.
+     */
+    private static int[] withoutWritableCells(int[] ranges, BitSet writable) {
+        int[] kept = new int[ranges.length];
+        int count = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            int next = writable.nextSetBit(ranges[i]);
+            if (next < 0 || next >= ranges[i + 1]) {
+                kept[count++] = ranges[i];
+                kept[count++] = ranges[i + 1];
+            }
+        }
+        return Arrays.copyOf(kept, count);
+    }
+
+    private int opcode(int address) {
+        return Instructions.opcode(memory.decode(address));
+    }
+
+    private static void append(StringBuilder values, long value) {
+        if (values.length() > 0) {
+            values.append(',');
+        }
+        values.append(value);
+    }
+
+    private void line(int indent, String line) {
+        for (int i = 0; i < indent; i++) {
+            source.append("    ");
+        }
+        source.append(line).append('\n');
+    }
+
+    private void constant(String name, CharSequence values) {
+        line(1, "private static final String[] " + name + " = {");
+        int from = 0;
+        while (from < values.length()) {
+            // Chunks end on a comma so that no value is split, parse() puts back the one between two chunks.
+            int to = Math.min(from + CHUNK, values.length());
+            while (to < values.length() && values.charAt(to) != ',') {
+                to++;
+            }
+            line(2, "\"" + values.subSequence(from, to) + "\",");
+            from = to + 1;
+        }
+        line(1, "};");
+    }
+
+    /**
+     * Emits an int method switching on the instruction pointer, split into one method per {@link #CASES_PER_METHOD}
+     * blocks.
+     */
+    private void dispatch(String name, String parameters, String arguments, int[] starts, IntFunction<String> body, String otherwise) {
+        int methods = Math.max(1, (starts.length + CASES_PER_METHOD - 1) / CASES_PER_METHOD);
+        line(0, "");
+        line(1, "private static int " + name + "(" + parameters + ") {");
+        for (int method = 1; method < methods; method++) {
+            line(2, "if (ip < " + starts[method * CASES_PER_METHOD] + ") {");
+            line(3, "return " + name + (method - 1) + "(" + arguments + ");");
+            line(2, "}");
+        }
+        line(2, "return " + name + (methods - 1) + "(" + arguments + ");");
+        line(1, "}");
+        for (int method = 0; method < methods; method++) {
+            line(0, "");
+            line(1, "private static int " + name + method + "(" + parameters + ") {");
+            line(2, "switch (ip) {");
+            for (int i = method * CASES_PER_METHOD; i < Math.min(starts.length, (method + 1) * CASES_PER_METHOD); i++) {
+                line(3, "case " + starts[i] + ":");
+                line(4, body.apply(i));
+            }
+            line(3, "default:");
+            line(4, otherwise);
+            line(2, "}");
+            line(1, "}");
+        }
+    }
+
+    private static String literal(long value) {
+        return value == Long.MIN_VALUE ? "Long.MIN_VALUE" : value + "L";
+    }
+
+    private String read(int address, int instruction, int offset) {
+        long parameter = memory.read(address + offset);
+        switch (Instructions.mode(instruction, offset)) {
+            case 0:
+                return "memory.read(" + literal(parameter) + ")";
+            case 1:
+                return literal(parameter);
+            default:
+                return "memory.read(machine.relativeBase + " + literal(parameter) + ")";
+        }
+    }
+
+    private String writeAddress(int address, int instruction, int offset) {
+        long parameter = memory.read(address + offset);
+        switch (Instructions.mode(instruction, offset)) {
+            case 0:
+                return literal(parameter);
+            case 1:
+                return literal(address + offset);
+            default:
+                return "machine.relativeBase + " + literal(parameter);
+        }
+    }
+
+    /**
+     * Emits a write and the early exit taken when it modified compiled code, which gives back the fuel of the
+     * {@code unexecuted} instructions left in the block.
+     */
+    private void write(String address, String value, int next, int unexecuted) {
+        line(2, "memory.write(" + address + ", " + value + ");");
+        line(2, "if (memory.codeModified) {");
+        if (unexecuted > 0) {
+            line(3, "machine.fuel += " + unexecuted + ";");
+        }
+        line(3, "return " + next + ";");
+        line(2, "}");
+    }
+
+    private void block(int start, int end) {
+        line(0, "");
+        line(1, "private static int b" + start + "(Memory memory, IntcodeMachine machine) {");
+        int address = start;
+        int left = 0;
+        for (int i = start; i < end; i += BlockCompiler.length(opcode(i))) {
+            left++;
+        }
+        while (address < end) {
+            int instruction = memory.decode(address);
+            int opcode = Instructions.opcode(instruction);
+            int next = address + BlockCompiler.length(opcode);
+            left--;
+            switch (opcode) {
+                case 1:
+                case 2:
+                    write(writeAddress(address, instruction, 3), read(address, instruction, 1)
+                            + (opcode == 1 ? " + " : " * ") + read(address, instruction, 2), next, left);
+                    break;
+                case 7:
+                case 8:
+                    write(writeAddress(address, instruction, 3), read(address, instruction, 1)
+                            + (opcode == 7 ? " < " : " == ") + read(address, instruction, 2) + " ? 1L : 0L", next, left);
+                    break;
+                case 9:
+                    line(2, "machine.relativeBase += " + read(address, instruction, 1) + ";");
+                    break;
+                case 5:
+                case 6:
+                    line(2, "if (" + read(address, instruction, 1) + (opcode == 5 ? " != " : " == ") + "0L) {");
+                    line(3, "return IntcodeMachine.jumpTarget(" + read(address, instruction, 2) + ");");
+                    line(2, "}");
+                    line(2, "return " + next + ";");
+                    line(1, "}");
+                    return;
+                default:
+                    throw new IllegalStateException("compile(" + opcode + ")");
+            }
+            address = next;
+        }
+        line(2, "return " + end + ";");
+        line(1, "}");
+    }
+}
@@ -0,0 +1,33 @@
+package com.adventofcode.intcode;
+
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounded channel of primitive longs. A channel is both the {@link LongConsumer} a machine writes its outputs to and
+ * the {@link LongSupplier} another machine reads its inputs from, blocking while the channel is full or empty.
+ */
+public interface LongChannel extends LongSupplier, LongConsumer {
+    boolean offer(long value);
+
+    void put(long value);
+
+    long take();
+
+    /**
+     * Returns the next value, or {@code ifEmpty} without waiting if there is none.
+     */
+    long poll(long ifEmpty);
+
+    boolean isEmpty();
+
+    @Override
+    default long getAsLong() {
+        return take();
+    }
+
+    @Override
+    default void accept(long value) {
+        put(value);
+    }
+}
@@ -0,0 +1,76 @@
+package com.adventofcode.intcode;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Unsynchronized FIFO of primitive longs over a power of two ring buffer.
+ */
+public class LongQueue {
+    private long[] elements;
+    private int head;
+    private int tail;
+
+    public LongQueue() {
+        this(16);
+    }
+
+    public LongQueue(int capacity) {
+        elements = new long[Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1];
+    }
+
+    public LongQueue(LongQueue other) {
+        elements = other.elements.clone();
+        head = other.head;
+        tail = other.tail;
+    }
+
+    public boolean isEmpty() {
+        return head == tail;
+    }
+
+    public int size() {
+        return tail - head;
+    }
+
+    public void add(long value) {
+        if (tail - head == elements.length) {
+            grow();
+        }
+        elements[tail++ & (elements.length - 1)] = value;
+    }
+
+    public long poll() {
+        if (head == tail) {
+            throw new NoSuchElementException();
+        }
+        return elements[head++ & (elements.length - 1)];
+    }
+
+    public long peek() {
+        if (head == tail) {
+            throw new NoSuchElementException();
+        }
+        return elements[head & (elements.length - 1)];
+    }
+
+    public void clear() {
+        head = 0;
+        tail = 0;
+    }
+
+    public long[] toArray() {
+        long[] array = new long[tail - head];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = elements[(head + i) & (elements.length - 1)];
+        }
+        return array;
+    }
+
+    private void grow() {
+        long[] grown = toArray();
+        elements = new long[elements.length << 1];
+        System.arraycopy(grown, 0, elements, 0, grown.length);
+        head = 0;
+        tail = grown.length;
+    }
+}
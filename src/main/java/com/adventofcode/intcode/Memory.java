@@ -0,0 +1,429 @@
+package com.adventofcode.intcode;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Intcode memory backed by a growable primitive array. Addresses past the end read as zero, writes past the end grow
+ * the backing array by doubling so that a program extending its memory one cell at a time stays amortized O(1).
+ * <p>
+ * A write far past the end of the array does not grow it: the cell goes to a fixed-size page allocated on demand
+ * instead, so that a program poking at address 10^12 only costs the pages it actually touches. Addresses are 64-bit,
+ * only negative addresses are rejected. Pages are folded back into the array when it grows over them.
+ * <p>
+ * Memory also caches decoded instructions by address (see {@link Instructions}). Writing a cell drops its cached
+ * decoding so that self-modifying programs see their new code. Cells covered by compiled code are marked as well, a
+ * write to one of them raises {@link #codeModified} so that the compiled code is dropped before it runs stale.
+ * <p>
+ * {@link #fork()} shares the arrays and pages between both memories until one of them writes, which copies the
+ * arrays, or the page being written, first.
+ * <p>
+ * The range of array cells written since the last {@link #reset(IntcodeProgram)} is tracked, so that resetting to the
+ * image only copies that range back.
+ */
+public class Memory {
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+    // Writes beyond twice the array length and beyond this many cells go to pages rather than growing the array.
+    private static final int DENSE_LIMIT = 1 << 20;
+    private static final int PAGE_BITS = 10;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+
+    private long[] cells;
+    private int[] decoded;
+    private boolean[] code;
+    private long size;
+    private boolean shared;
+    boolean codeModified;
+    // Image of the last reset and the array cells written since, [dirtyFrom, dirtyTo).
+    private IntcodeProgram image;
+    private int dirtyFrom = Integer.MAX_VALUE;
+    private int dirtyTo;
+
+    private Map<Long, Page> pages;
+    private Object owner = new Object();
+
+    /**
+     * Takes ownership of the given array, callers must not modify it afterwards.
+     */
+    public Memory(long[] cells) {
+        this.cells = cells;
+        this.decoded = new int[cells.length];
+        this.size = cells.length;
+    }
+
+    /**
+     * Memory holding a copy of the image, which a later {@link #reset(IntcodeProgram)} to it only partially copies.
+     */
+    Memory(IntcodeProgram image) {
+        this(image.copy());
+        this.image = image;
+    }
+
+    private Memory(Memory other) {
+        this.cells = other.cells;
+        this.decoded = other.decoded;
+        this.code = other.code;
+        this.size = other.size;
+        this.codeModified = other.codeModified;
+        this.image = other.image;
+        this.dirtyFrom = other.dirtyFrom;
+        this.dirtyTo = other.dirtyTo;
+        this.shared = true;
+        if (other.pages != null) {
+            this.pages = new HashMap<>(other.pages);
+        }
+    }
+
+    public Memory fork() {
+        shared = true;
+        // Pages written from now on belong to neither memory, both copy them on their next write.
+        owner = new Object();
+        return new Memory(this);
+    }
+
+    private void unshare() {
+        cells = cells.clone();
+        decoded = decoded.clone();
+        if (code != null) {
+            code = code.clone();
+        }
+        shared = false;
+    }
+
+    public long read(long address) {
+        if (address >= 0 && address < cells.length) {
+            return cells[(int) address];
+        }
+        if (address < 0) {
+            throw new IllegalStateException("read(" + address + ")");
+        }
+        if (pages != null) {
+            Page page = pages.get(address >>> PAGE_BITS);
+            if (page != null) {
+                return page.cells[(int) address & (PAGE_SIZE - 1)];
+            }
+        }
+        return 0L;
+    }
+
+    public void write(long address, long value) {
+        if (address >= 0 && address < cells.length) {
+            if (shared) {
+                unshare();
+            }
+            int index = (int) address;
+            cells[index] = value;
+            decoded[index] = 0;
+            if (code != null && code[index]) {
+                codeModified = true;
+            }
+            dirty(index);
+        } else if (address < 0) {
+            throw new IllegalStateException("write(" + address + ")");
+        } else if (address < Math.max(DENSE_LIMIT, (long) cells.length << 1) && address < MAX_CAPACITY) {
+            if (shared) {
+                unshare();
+            }
+            grow(address);
+            cells[(int) address] = value;
+            dirty((int) address);
+        } else {
+            writePage(address, value);
+        }
+        if (address >= size) {
+            size = address + 1;
+        }
+    }
+
+    private void dirty(int index) {
+        if (index < dirtyFrom) {
+            dirtyFrom = index;
+        }
+        if (index >= dirtyTo) {
+            dirtyTo = index + 1;
+        }
+    }
+
+    /**
+     * Restores the image: copies its cells back over the range written since the last reset, zeroes the cells written
+     * past it and drops the pages. The backing array keeps its capacity, and the compiled code marks their cells,
+     * which the caller checks. Only a memory created from or last reset to the same image can do so, any other one
+     * copies the whole image.
+     */
+    void reset(IntcodeProgram image) {
+        if (shared || image != this.image || cells.length < image.size()) {
+            cells = image.copy();
+            decoded = new int[cells.length];
+            code = null;
+            shared = false;
+        } else if (dirtyFrom < dirtyTo) {
+            int copyTo = Math.min(dirtyTo, image.size());
+            if (dirtyFrom < copyTo) {
+                image.copy(dirtyFrom, copyTo, cells);
+            }
+            int zeroFrom = Math.max(dirtyFrom, image.size());
+            if (zeroFrom < dirtyTo) {
+                Arrays.fill(cells, zeroFrom, dirtyTo, 0L);
+            }
+            Arrays.fill(decoded, dirtyFrom, dirtyTo, 0);
+        }
+        this.image = image;
+        dirtyFrom = Integer.MAX_VALUE;
+        dirtyTo = 0;
+        size = image.size();
+        pages = null;
+        codeModified = false;
+    }
+
+    private void writePage(long address, long value) {
+        if (pages == null) {
+            pages = new HashMap<>();
+        }
+        Long index = address >>> PAGE_BITS;
+        Page page = pages.get(index);
+        if (page == null) {
+            if (value == 0L) {
+                return;
+            }
+            page = new Page(owner, new long[PAGE_SIZE]);
+            pages.put(index, page);
+        } else if (page.owner != owner) {
+            page = new Page(owner, page.cells.clone());
+            pages.put(index, page);
+        }
+        page.cells[(int) address & (PAGE_SIZE - 1)] = value;
+    }
+
+    private void grow(long address) {
+        int capacity = (int) Math.max(address + 1, Math.min((long) cells.length << 1, MAX_CAPACITY));
+        cells = Arrays.copyOf(cells, capacity);
+        decoded = Arrays.copyOf(decoded, capacity);
+        if (code != null) {
+            code = Arrays.copyOf(code, capacity);
+        }
+        if (pages != null) {
+            foldPages(capacity);
+        }
+    }
+
+    private void foldPages(int capacity) {
+        Iterator<Map.Entry<Long, Page>> iterator = pages.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Page> entry = iterator.next();
+            long start = entry.getKey() << PAGE_BITS;
+            if (start < capacity) {
+                int length = (int) Math.min(PAGE_SIZE, capacity - start);
+                System.arraycopy(entry.getValue().cells, 0, cells, (int) start, length);
+                dirty((int) start);
+                dirty((int) start + length - 1);
+                if (length == PAGE_SIZE) {
+                    iterator.remove();
+                } else {
+                    long[] rest = new long[PAGE_SIZE];
+                    System.arraycopy(entry.getValue().cells, length, rest, length, PAGE_SIZE - length);
+                    entry.setValue(new Page(owner, rest));
+                }
+            }
+        }
+    }
+
+    void markCode(int from, int to) {
+        if (shared) {
+            unshare();
+        }
+        if (code == null) {
+            code = new boolean[cells.length];
+        }
+        Arrays.fill(code, from, to, true);
+    }
+
+    void clearCode() {
+        code = null;
+        codeModified = false;
+    }
+
+    public int decode(long address) {
+        if (address >= 0 && address < decoded.length) {
+            int index = (int) address;
+            int instruction = decoded[index];
+            if (instruction == 0) {
+                instruction = Instructions.decode(cells[index]);
+                decoded[index] = instruction;
+            }
+            return instruction;
+        }
+        return Instructions.decode(read(address));
+    }
+
+    /**
+     * Returns one past the highest address written so far, or the image size.
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Number of cells held by the backing array, the only cells that can be marked as compiled code.
+     */
+    int denseSize() {
+        return (int) Math.min(size, cells.length);
+    }
+
+    /**
+     * Number of pages allocated beyond the backing array.
+     */
+    public int pageCount() {
+        return pages == null ? 0 : pages.size();
+    }
+
+    /**
+     * Number of cells allocated: the dense ones in use plus every page. Unlike {@link #size()} it does not count the
+     * untouched addresses below the highest one.
+     */
+    public long allocated() {
+        return denseSize() + (long) pageCount() * PAGE_SIZE;
+    }
+
+    public long[] toArray() {
+        if (size > MAX_CAPACITY) {
+            throw new IllegalStateException("toArray(" + size + ")");
+        }
+        long[] array = Arrays.copyOf(cells, (int) size);
+        if (pages != null) {
+            for (Map.Entry<Long, Page> entry : pages.entrySet()) {
+                // A page partially folded into the array only holds the cells past its end.
+                long start = entry.getKey() << PAGE_BITS;
+                int from = (int) Math.max(start, cells.length);
+                int length = (int) Math.min(start + PAGE_SIZE, array.length) - from;
+                if (length > 0) {
+                    System.arraycopy(entry.getValue().cells, (int) (from - start), array, from, length);
+                }
+            }
+        }
+        return array;
+    }
+
+    /**
+     * Writes the cells, not the caches: the array cells up to the size, then every page.
+     */
+    void save(DataOutput out) throws IOException {
+        int dense = denseSize();
+        VarLongs.write(out, size);
+        VarLongs.write(out, dense);
+        for (int i = 0; i < dense; i++) {
+            VarLongs.write(out, cells[i]);
+        }
+        VarLongs.write(out, pageCount());
+        if (pages != null) {
+            for (Map.Entry<Long, Page> entry : pages.entrySet()) {
+                VarLongs.write(out, entry.getKey());
+                for (long value : entry.getValue().cells) {
+                    VarLongs.write(out, value);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads back a memory written by {@link #save(DataOutput)}.
+     */
+    static Memory load(DataInput in) throws IOException {
+        long size = VarLongs.read(in);
+        long[] cells = new long[(int) VarLongs.read(in)];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = VarLongs.read(in);
+        }
+        Memory memory = new Memory(cells);
+        memory.size = size;
+        int pageCount = (int) VarLongs.read(in);
+        for (int i = 0; i < pageCount; i++) {
+            long index = VarLongs.read(in);
+            long[] values = new long[PAGE_SIZE];
+            for (int j = 0; j < PAGE_SIZE; j++) {
+                values[j] = VarLongs.read(in);
+            }
+            if (memory.pages == null) {
+                memory.pages = new HashMap<>();
+            }
+            memory.pages.put(index, new Page(memory.owner, values));
+        }
+        return memory;
+    }
+
+    /**
+     * Number of longs {@link #save(LongBuffer)} puts.
+     */
+    long savedLongs() {
+        return 3L + denseSize() + (long) pageCount() * (1 + PAGE_SIZE);
+    }
+
+    /**
+     * Puts the same fields as {@link #save(DataOutput)}, as fixed width longs that bulk copy in and out of a mapped
+     * file.
+     */
+    void save(LongBuffer out) {
+        int dense = denseSize();
+        out.put(size);
+        out.put(dense);
+        out.put(cells, 0, dense);
+        out.put(pageCount());
+        if (pages != null) {
+            for (Map.Entry<Long, Page> entry : pages.entrySet()) {
+                out.put(entry.getKey());
+                out.put(entry.getValue().cells);
+            }
+        }
+    }
+
+    /**
+     * Reads back a memory put by {@link #save(LongBuffer)}.
+     */
+    static Memory load(LongBuffer in) {
+        long size = in.get();
+        long[] cells = new long[count(in, 1)];
+        if (size < cells.length) {
+            throw new IllegalStateException("size " + size + " below " + cells.length + " cells");
+        }
+        in.get(cells);
+        Memory memory = new Memory(cells);
+        memory.size = size;
+        int pageCount = count(in, 1 + PAGE_SIZE);
+        if (pageCount > 0) {
+            memory.pages = new HashMap<>();
+        }
+        for (int i = 0; i < pageCount; i++) {
+            long index = in.get();
+            long[] values = new long[PAGE_SIZE];
+            in.get(values);
+            memory.pages.put(index, new Page(memory.owner, values));
+        }
+        return memory;
+    }
+
+    /**
+     * Reads the number of items of {@code longs} longs each that follow in the buffer, checking that they fit in it.
+     */
+    static int count(LongBuffer in, int longs) {
+        long count = in.get();
+        if (count < 0 || count > in.remaining() / longs) {
+            throw new IllegalStateException("count " + count + " of " + in.remaining() + " longs left");
+        }
+        return (int) count;
+    }
+
+    private static final class Page {
+        private final Object owner;
+        private final long[] cells;
+
+        private Page(Object owner, long[] cells) {
+            this.owner = owner;
+            this.cells = cells;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.adventofcode.intcode;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Multi-producer single-consumer ring buffer. Producers claim a slot by advancing the tail with a CAS, then publish it
+ * through the slot's sequence number; the consumer only reads slots whose sequence says they are published.
+ */
+public class MpscLongChannel implements LongChannel {
+    private final long[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private final AtomicLong tail = new AtomicLong();
+    private volatile long head;
+    private volatile Thread waitingConsumer;
+
+    public MpscLongChannel(int capacity) {
+        this(capacity, WaitStrategy.spinThenPark());
+    }
+
+    public MpscLongChannel(int capacity, WaitStrategy waitStrategy) {
+        this.buffer = new long[Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1];
+        this.sequences = new AtomicLongArray(buffer.length);
+        this.mask = buffer.length - 1;
+        this.waitStrategy = waitStrategy;
+        for (int i = 0; i < buffer.length; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    @Override
+    public boolean offer(long value) {
+        while (true) {
+            long currentTail = tail.get();
+            int slot = (int) currentTail & mask;
+            long sequence = sequences.get(slot);
+            if (sequence == currentTail) {
+                if (tail.compareAndSet(currentTail, currentTail + 1)) {
+                    buffer[slot] = value;
+                    sequences.set(slot, currentTail + 1);
+                    Thread consumer = waitingConsumer;
+                    if (consumer != null) {
+                        LockSupport.unpark(consumer);
+                    }
+                    return true;
+                }
+            } else if (sequence < currentTail) {
+                return false;
+            }
+        }
+    }
+
+    @Override
+    public void put(long value) {
+        // Several producers may wait at once, they rely on the strategy's bounded parking.
+        for (int attempt = 0; !offer(value); attempt++) {
+            waitStrategy.idle(attempt);
+        }
+    }
+
+    private boolean isReadable() {
+        long currentHead = head;
+        return sequences.get((int) currentHead & mask) == currentHead + 1;
+    }
+
+    private long dequeue() {
+        long currentHead = head;
+        int slot = (int) currentHead & mask;
+        long value = buffer[slot];
+        sequences.set(slot, currentHead + buffer.length);
+        head = currentHead + 1;
+        return value;
+    }
+
+    @Override
+    public long take() {
+        if (isReadable()) {
+            return dequeue();
+        }
+        waitingConsumer = Thread.currentThread();
+        try {
+            for (int attempt = 0; !isReadable(); attempt++) {
+                waitStrategy.idle(attempt);
+            }
+        } finally {
+            waitingConsumer = null;
+        }
+        return dequeue();
+    }
+
+    @Override
+    public long poll(long ifEmpty) {
+        return isReadable() ? dequeue() : ifEmpty;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !isReadable();
+    }
+}
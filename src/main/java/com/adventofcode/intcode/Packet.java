@@ -0,0 +1,52 @@
+package com.adventofcode.intcode;
+
+import java.util.Objects;
+
+/**
+ * Packet moving on an {@link IntcodeNetwork}: the destination address and two values.
+ */
+public final class Packet {
+    private final long address;
+    private final long x;
+    private final long y;
+
+    public Packet(long address, long x, long y) {
+        this.address = address;
+        this.x = x;
+        this.y = y;
+    }
+
+    public long getAddress() {
+        return address;
+    }
+
+    public long getX() {
+        return x;
+    }
+
+    public long getY() {
+        return y;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Packet packet = (Packet) o;
+        return address == packet.address && x == packet.x && y == packet.y;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(address, x, y);
+    }
+
+    @Override
+    public String toString() {
+        return "Packet{" +
+                "address=" + address +
+                ", x=" + x +
+                ", y=" + y +
+                '}';
+    }
+}
@@ -0,0 +1,74 @@
+package com.adventofcode.intcode;
+
+/**
+ * Base class of the blocks generated ahead of time by {@link IntcodeSourceGenerator}. A generated class holds the code
+ * cells it was compiled from, and only serves a machine whose memory holds exactly the same cells.
+ * <p>
+ * The generated classes are listed by a generated {@code PrecompiledIndex} class, looked up by name so that builds
+ * without generated code simply find none.
+ */
+abstract class PrecompiledBlocks implements CompiledBlocks {
+    private static final String INDEX = "com.adventofcode.intcode.PrecompiledIndex";
+    private static final PrecompiledBlocks[] ALL = load();
+
+    private final CompiledRegion region;
+
+    protected PrecompiledBlocks(long[] ranges, long[] code) {
+        int[] bounds = new int[ranges.length];
+        int end = 0;
+        for (int i = 0; i < ranges.length; i++) {
+            bounds[i] = (int) ranges[i];
+            end = Math.max(end, bounds[i]);
+        }
+        boolean[] entries = new boolean[end + 1];
+        for (int i = 0; i < ranges.length; i += 2) {
+            entries[bounds[i]] = true;
+        }
+        this.region = new CompiledRegion(this, entries, bounds, code);
+    }
+
+    private static PrecompiledBlocks[] load() {
+        try {
+            return (PrecompiledBlocks[]) Class.forName(INDEX).getDeclaredField("BLOCKS").get(null);
+        } catch (ClassNotFoundException e) {
+            return new PrecompiledBlocks[0];
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Returns the region of the first generated blocks compiled from the code this memory holds, if any.
+     */
+    static CompiledRegion lookup(Memory memory) {
+        for (PrecompiledBlocks blocks : ALL) {
+            CompiledRegion region = blocks.regionFor(memory);
+            if (region != null) {
+                return region;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Parses the comma separated values of the given chunks, the generated classes keep their tables as string
+     * constants to stay clear of the size limits of a class initializer.
+     */
+    protected static long[] parse(String... chunks) {
+        StringBuilder values = new StringBuilder();
+        for (String chunk : chunks) {
+            if (values.length() > 0 && !chunk.isEmpty()) {
+                values.append(',');
+            }
+            values.append(chunk);
+        }
+        return values.length() == 0 ? new long[0] : IntcodeProgram.parse(values.toString()).copy();
+    }
+
+    /**
+     * Returns the region of these blocks if the memory holds the code they were compiled from, null otherwise.
+     */
+    CompiledRegion regionFor(Memory memory) {
+        return region.matches(memory) ? region : null;
+    }
+}
@@ -0,0 +1,168 @@
+package com.adventofcode.intcode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Instruction level profile of an {@link IntcodeMachine}, see {@link IntcodeMachine#setProfiler(Profiler)}. Records
+ * how often each opcode and each address ran, how often each conditional jump was taken, how long the machine waited
+ * for inputs and how many memory cells it allocated at most.
+ * <p>
+ * A profiled machine only interprets, so that every instruction is seen. A profiler is not thread-safe but may be
+ * shared by machines running on the same thread, their counts then add up.
+ */
+public class Profiler {
+    private final long[] opcodes = new long[100];
+    private long[] hits = new long[0];
+    private long[] taken = new long[0];
+    private long[] notTaken = new long[0];
+    private long instructions;
+    private long inputWaitNanos;
+    private long waitStart = -1;
+    private long peakMemory;
+
+    void instruction(int address, int opcode) {
+        instructions++;
+        opcodes[opcode]++;
+        if (address >= hits.length) {
+            int capacity = Math.max(address + 1, hits.length << 1);
+            hits = Arrays.copyOf(hits, capacity);
+            taken = Arrays.copyOf(taken, capacity);
+            notTaken = Arrays.copyOf(notTaken, capacity);
+        }
+        hits[address]++;
+    }
+
+    void memory(long allocatedCells) {
+        if (allocatedCells > peakMemory) {
+            peakMemory = allocatedCells;
+        }
+    }
+
+    void branch(int address, boolean jumped) {
+        if (jumped) {
+            taken[address]++;
+        } else {
+            notTaken[address]++;
+        }
+    }
+
+    /**
+     * The input instruction at the given address found no input: it is counted again when it resumes.
+     */
+    void blocked(int address) {
+        instructions--;
+        opcodes[3]--;
+        hits[address]--;
+        if (waitStart < 0) {
+            waitStart = System.nanoTime();
+        }
+    }
+
+    void inputReceived() {
+        if (waitStart >= 0) {
+            inputWaitNanos += System.nanoTime() - waitStart;
+            waitStart = -1;
+        }
+    }
+
+    public long getInstructions() {
+        return instructions;
+    }
+
+    public long getOpcodeCount(int opcode) {
+        return opcode >= 0 && opcode < opcodes.length ? opcodes[opcode] : 0L;
+    }
+
+    public long getHits(int address) {
+        return address >= 0 && address < hits.length ? hits[address] : 0L;
+    }
+
+    public long getTaken(int address) {
+        return address >= 0 && address < taken.length ? taken[address] : 0L;
+    }
+
+    public long getNotTaken(int address) {
+        return address >= 0 && address < notTaken.length ? notTaken[address] : 0L;
+    }
+
+    /**
+     * Share of the executions of the jump at the given address that jumped, NaN if it never ran.
+     */
+    public double getTakenRatio(int address) {
+        long total = getTaken(address) + getNotTaken(address);
+        return total == 0 ? Double.NaN : (double) getTaken(address) / total;
+    }
+
+    public long getInputWaitNanos() {
+        return inputWaitNanos;
+    }
+
+    /**
+     * Most memory cells allocated at once, see {@link Memory#allocated()}.
+     */
+    public long getPeakMemory() {
+        return peakMemory;
+    }
+
+    /**
+     * Returns the addresses that ran the most, hottest first.
+     */
+    public int[] getHotAddresses(int limit) {
+        return IntStream.range(0, hits.length)
+                .filter(address -> hits[address] > 0)
+                .boxed()
+                .sorted((a, b) -> Long.compare(hits[b], hits[a]))
+                .limit(limit)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    public void reset() {
+        Arrays.fill(opcodes, 0L);
+        hits = new long[0];
+        taken = new long[0];
+        notTaken = new long[0];
+        instructions = 0;
+        inputWaitNanos = 0;
+        waitStart = -1;
+        peakMemory = 0;
+    }
+
+    /**
+     * Writes the profile as CSV rows {@code type,key,count,taken,not_taken}: one {@code summary} row per total,
+     * one {@code opcode} row per opcode that ran and one {@code address} row per address that ran.
+     */
+    public void writeCsv(Appendable out) {
+        try {
+            out.append("type,key,count,taken,not_taken\n");
+            out.append("summary,instructions,").append(Long.toString(instructions)).append(",,\n");
+            out.append("summary,input_wait_nanos,").append(Long.toString(inputWaitNanos)).append(",,\n");
+            out.append("summary,peak_memory,").append(Long.toString(peakMemory)).append(",,\n");
+            for (int opcode = 0; opcode < opcodes.length; opcode++) {
+                if (opcodes[opcode] > 0) {
+                    out.append("opcode,").append(Integer.toString(opcode)).append(',')
+                            .append(Long.toString(opcodes[opcode])).append(",,\n");
+                }
+            }
+            for (int address = 0; address < hits.length; address++) {
+                if (hits[address] > 0) {
+                    out.append("address,").append(Integer.toString(address)).append(',')
+                            .append(Long.toString(hits[address])).append(',')
+                            .append(Long.toString(taken[address])).append(',')
+                            .append(Long.toString(notTaken[address])).append('\n');
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public String toCsv() {
+        StringBuilder builder = new StringBuilder();
+        writeCsv(builder);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,107 @@
+package com.adventofcode.intcode;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer single-consumer ring buffer. Each side only writes its own index and caches the other one, so the
+ * common case is a plain array access and one volatile write.
+ */
+public class SpscLongChannel implements LongChannel {
+    private final long[] buffer;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+    private volatile long head;
+    private volatile long tail;
+    private long cachedHead;
+    private long cachedTail;
+    private volatile Thread waitingConsumer;
+    private volatile Thread waitingProducer;
+
+    public SpscLongChannel(int capacity) {
+        this(capacity, WaitStrategy.spinThenPark());
+    }
+
+    public SpscLongChannel(int capacity, WaitStrategy waitStrategy) {
+        this.buffer = new long[Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1];
+        this.mask = buffer.length - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    @Override
+    public boolean offer(long value) {
+        long currentTail = tail;
+        if (currentTail - cachedHead == buffer.length) {
+            cachedHead = head;
+            if (currentTail - cachedHead == buffer.length) {
+                return false;
+            }
+        }
+        buffer[(int) currentTail & mask] = value;
+        tail = currentTail + 1;
+        Thread consumer = waitingConsumer;
+        if (consumer != null) {
+            LockSupport.unpark(consumer);
+        }
+        return true;
+    }
+
+    @Override
+    public void put(long value) {
+        if (offer(value)) {
+            return;
+        }
+        waitingProducer = Thread.currentThread();
+        try {
+            for (int attempt = 0; !offer(value); attempt++) {
+                waitStrategy.idle(attempt);
+            }
+        } finally {
+            waitingProducer = null;
+        }
+    }
+
+    private boolean isReadable() {
+        long currentHead = head;
+        if (currentHead == cachedTail) {
+            cachedTail = tail;
+        }
+        return currentHead != cachedTail;
+    }
+
+    private long dequeue() {
+        long currentHead = head;
+        long value = buffer[(int) currentHead & mask];
+        head = currentHead + 1;
+        Thread producer = waitingProducer;
+        if (producer != null) {
+            LockSupport.unpark(producer);
+        }
+        return value;
+    }
+
+    @Override
+    public long take() {
+        if (isReadable()) {
+            return dequeue();
+        }
+        waitingConsumer = Thread.currentThread();
+        try {
+            for (int attempt = 0; !isReadable(); attempt++) {
+                waitStrategy.idle(attempt);
+            }
+        } finally {
+            waitingConsumer = null;
+        }
+        return dequeue();
+    }
+
+    @Override
+    public long poll(long ifEmpty) {
+        return isReadable() ? dequeue() : ifEmpty;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return head == tail;
+    }
+}
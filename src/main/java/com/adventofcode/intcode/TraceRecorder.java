@@ -0,0 +1,111 @@
+package com.adventofcode.intcode;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Records the session of a machine, see {@link IntcodeMachine#setRecorder(TraceRecorder)}, as a compact binary trace
+ * that {@link TraceReplay} plays back without the game or robot that drove it.
+ * <p>
+ * The trace starts with a header and a checkpoint of the machine as it was when recording started, followed by one
+ * event per input given to the machine and per output it produced. Every {@code checkpointInterval} inputs, another
+ * checkpoint of the whole machine state comes before the input, so that a replay restores the nearest one instead of
+ * running from the start. Values are written with a variable length encoding, most take a single byte.
+ * <p>
+ * A recorder is not thread-safe and records a single machine.
+ */
+public class TraceRecorder implements AutoCloseable {
+    static final int MAGIC = 0x49435452;
+    static final int VERSION = 1;
+    static final int END = 0;
+    static final int INPUT = 1;
+    static final int OUTPUT = 2;
+    static final int CHECKPOINT = 3;
+
+    private final DataOutputStream out;
+    private final int checkpointInterval;
+    private long events;
+    private long inputs;
+    private long checkpoints;
+
+    /**
+     * Starts recording the machine to the stream, with a checkpoint every {@code checkpointInterval} inputs, or only
+     * the initial one if zero.
+     */
+    public TraceRecorder(IntcodeMachine machine, OutputStream out, int checkpointInterval) {
+        this.out = new DataOutputStream(new BufferedOutputStream(out));
+        this.checkpointInterval = checkpointInterval;
+        try {
+            this.out.writeInt(MAGIC);
+            this.out.writeByte(VERSION);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        checkpoint(machine);
+        machine.setRecorder(this);
+    }
+
+    void input(IntcodeMachine machine, long value) {
+        if (checkpointInterval > 0 && inputs > 0 && inputs % checkpointInterval == 0) {
+            checkpoint(machine);
+        }
+        inputs++;
+        event(INPUT, value);
+    }
+
+    void output(long value) {
+        event(OUTPUT, value);
+    }
+
+    private void event(int type, long value) {
+        try {
+            out.writeByte(type);
+            VarLongs.write(out, value);
+            events++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void checkpoint(IntcodeMachine machine) {
+        try {
+            ByteArrayOutputStream state = new ByteArrayOutputStream();
+            try (DataOutputStream stateOut = new DataOutputStream(state)) {
+                machine.save(stateOut);
+            }
+            out.writeByte(CHECKPOINT);
+            VarLongs.write(out, events);
+            VarLongs.write(out, state.size());
+            state.writeTo(out);
+            checkpoints++;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public long getEvents() {
+        return events;
+    }
+
+    public long getCheckpoints() {
+        return checkpoints;
+    }
+
+    /**
+     * Ends the trace and closes the stream. The machine keeps calling the recorder until
+     * {@code setRecorder(null)}, events recorded after closing fail.
+     */
+    @Override
+    public void close() {
+        try {
+            out.writeByte(END);
+            out.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
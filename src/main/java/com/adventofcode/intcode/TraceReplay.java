@@ -0,0 +1,156 @@
+package com.adventofcode.intcode;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Trace written by a {@link TraceRecorder}, played back on its own: {@link #seek(int)} restores the last checkpoint
+ * before the requested event and feeds the recorded inputs from there, checking every output against the trace.
+ */
+public class TraceReplay {
+    // Recorded events, inputs and outputs interleaved.
+    private final boolean[] isInput;
+    private final long[] values;
+    private final int events;
+    // Checkpoints in event order: the number of events before each and the machine state it holds.
+    private final int[] checkpointEvents;
+    private final byte[][] checkpoints;
+
+    private TraceReplay(boolean[] isInput, long[] values, int events, int[] checkpointEvents, byte[][] checkpoints) {
+        this.isInput = isInput;
+        this.values = values;
+        this.events = events;
+        this.checkpointEvents = checkpointEvents;
+        this.checkpoints = checkpoints;
+    }
+
+    /**
+     * Reads a whole trace, which must have been closed by its recorder.
+     */
+    public static TraceReplay read(InputStream stream) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+        if (in.readInt() != TraceRecorder.MAGIC) {
+            throw new IOException("not an Intcode trace");
+        }
+        int version = in.readUnsignedByte();
+        if (version != TraceRecorder.VERSION) {
+            throw new IOException("unsupported trace version " + version);
+        }
+        boolean[] isInput = new boolean[16];
+        long[] values = new long[16];
+        int events = 0;
+        int[] checkpointEvents = new int[4];
+        byte[][] checkpoints = new byte[4][];
+        int checkpointCount = 0;
+        while (true) {
+            int type = in.readUnsignedByte();
+            switch (type) {
+                case TraceRecorder.END:
+                    if (checkpointCount == 0) {
+                        throw new IOException("trace without checkpoint");
+                    }
+                    return new TraceReplay(isInput, values, events, Arrays.copyOf(checkpointEvents, checkpointCount),
+                            Arrays.copyOf(checkpoints, checkpointCount));
+                case TraceRecorder.INPUT:
+                case TraceRecorder.OUTPUT:
+                    if (events == values.length) {
+                        isInput = Arrays.copyOf(isInput, events << 1);
+                        values = Arrays.copyOf(values, events << 1);
+                    }
+                    isInput[events] = type == TraceRecorder.INPUT;
+                    values[events++] = VarLongs.read(in);
+                    break;
+                case TraceRecorder.CHECKPOINT:
+                    if (VarLongs.read(in) != events) {
+                        throw new IOException("checkpoint out of place at event " + events);
+                    }
+                    if (checkpointCount == checkpoints.length) {
+                        checkpointEvents = Arrays.copyOf(checkpointEvents, checkpointCount << 1);
+                        checkpoints = Arrays.copyOf(checkpoints, checkpointCount << 1);
+                    }
+                    byte[] state = new byte[(int) VarLongs.read(in)];
+                    in.readFully(state);
+                    checkpointEvents[checkpointCount] = events;
+                    checkpoints[checkpointCount++] = state;
+                    break;
+                default:
+                    throw new IOException("unknown event type " + type);
+            }
+        }
+    }
+
+    public int size() {
+        return events;
+    }
+
+    public boolean isInput(int event) {
+        return isInput[check(event)];
+    }
+
+    public long getValue(int event) {
+        return values[check(event)];
+    }
+
+    public int getCheckpoints() {
+        return checkpoints.length;
+    }
+
+    private int check(int event) {
+        if (event < 0 || event >= events) {
+            throw new IndexOutOfBoundsException("event " + event + " of " + events);
+        }
+        return event;
+    }
+
+    /**
+     * Returns the outputs recorded in [from, to).
+     */
+    public long[] outputs(int from, int to) {
+        LongQueue outputs = new LongQueue();
+        for (int event = from; event < to; event++) {
+            if (!isInput(event)) {
+                outputs.add(values[event]);
+            }
+        }
+        return outputs.toArray();
+    }
+
+    /**
+     * Returns a machine in the state the recorded one was in right after the first {@code event} events: its inputs
+     * given, its outputs produced. The machine is independent of the trace and may be run further.
+     *
+     * @throws IllegalStateException if the machine does not produce the recorded outputs
+     */
+    public IntcodeMachine seek(int event) {
+        if (event < 0 || event > events) {
+            throw new IndexOutOfBoundsException("event " + event + " of " + events);
+        }
+        int checkpoint = Arrays.binarySearch(checkpointEvents, event);
+        if (checkpoint < 0) {
+            checkpoint = -checkpoint - 2;
+        }
+        IntcodeMachine machine;
+        try {
+            machine = IntcodeMachine.load(new DataInputStream(new ByteArrayInputStream(checkpoints[checkpoint])));
+        } catch (IOException e) {
+            throw new IllegalStateException("corrupt checkpoint", e);
+        }
+        for (int i = checkpointEvents[checkpoint]; i < event; i++) {
+            if (isInput[i]) {
+                machine.input(values[i]);
+            } else {
+                IntcodeMachine.State state = machine.run();
+                if (state != IntcodeMachine.State.OUTPUT || machine.getOutput() != values[i]) {
+                    throw new IllegalStateException("replay diverges at event " + i + ": " + state
+                            + (state == IntcodeMachine.State.OUTPUT ? " " + machine.getOutput() : "")
+                            + " instead of output " + values[i]);
+                }
+            }
+        }
+        return machine;
+    }
+}
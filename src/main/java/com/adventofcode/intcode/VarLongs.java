@@ -0,0 +1,36 @@
+package com.adventofcode.intcode;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Variable length encoding of longs for the binary state and trace formats: zigzag, so that small negative values
+ * stay short too, then seven bits per byte, low bits first, the high bit telling whether more bytes follow. Intcode
+ * memory is mostly zeros and small values, which take a single byte instead of eight.
+ */
+final class VarLongs {
+    private VarLongs() {
+    }
+
+    static void write(DataOutput out, long value) throws IOException {
+        long bits = (value << 1) ^ (value >> 63);
+        while ((bits & ~0x7FL) != 0) {
+            out.writeByte((int) (bits & 0x7F) | 0x80);
+            bits >>>= 7;
+        }
+        out.writeByte((int) bits);
+    }
+
+    static long read(DataInput in) throws IOException {
+        long bits = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            bits |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (bits >>> 1) ^ -(bits & 1);
+            }
+        }
+        throw new IOException("malformed variable length value");
+    }
+}
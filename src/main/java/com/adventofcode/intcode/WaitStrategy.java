@@ -0,0 +1,36 @@
+package com.adventofcode.intcode;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decides how a thread waits on a {@link LongChannel}: {@link #idle(int)} is called with the number of unsuccessful
+ * attempts so far, the channel checks again after each call.
+ */
+public interface WaitStrategy {
+    void idle(int attempt);
+
+    /**
+     * Busy spins, then yields, then parks for exponentially longer periods capped at {@code maxParkNanos}. Channels
+     * unpark waiting threads as soon as they make progress, the cap only bounds a missed wake-up. An interrupted
+     * thread stops waiting with an {@link IllegalStateException}.
+     */
+    static WaitStrategy spinThenPark(int spins, int yields, long maxParkNanos) {
+        return attempt -> {
+            if (attempt < spins) {
+                Thread.onSpinWait();
+            } else if (attempt < spins + yields) {
+                Thread.yield();
+            } else {
+                if (Thread.interrupted()) {
+                    throw new IllegalStateException(new InterruptedException());
+                }
+                int shift = Math.min(attempt - spins - yields, 20);
+                LockSupport.parkNanos(Math.min(1000L << shift, maxParkNanos));
+            }
+        };
+    }
+
+    static WaitStrategy spinThenPark() {
+        return spinThenPark(100, 10, 1_000_000L);
+    }
+}
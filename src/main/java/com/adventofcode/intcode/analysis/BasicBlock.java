@@ -0,0 +1,65 @@
+package com.adventofcode.intcode.analysis;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Straight-line run of instructions: control enters at the first one only and leaves after the last one, either
+ * falling through to the next block or jumping.
+ */
+public final class BasicBlock {
+    private final List<Instruction> instructions;
+    private final int fallThrough;
+    private final int target;
+    private final boolean indirect;
+
+    BasicBlock(List<Instruction> instructions, int fallThrough, int target, boolean indirect) {
+        this.instructions = Collections.unmodifiableList(instructions);
+        this.fallThrough = fallThrough;
+        this.target = target;
+        this.indirect = indirect;
+    }
+
+    public int getStart() {
+        return instructions.get(0).getAddress();
+    }
+
+    public int getEnd() {
+        return getLast().getEnd();
+    }
+
+    public List<Instruction> getInstructions() {
+        return instructions;
+    }
+
+    public Instruction getLast() {
+        return instructions.get(instructions.size() - 1);
+    }
+
+    /**
+     * Start of the block control falls through to, -1 if it does not fall through or no instruction decodes there.
+     */
+    public int getFallThrough() {
+        return fallThrough;
+    }
+
+    /**
+     * Start of the block a direct jump leads to, -1 if the block does not end with a direct jump or the target does
+     * not decode.
+     */
+    public int getTarget() {
+        return target;
+    }
+
+    /**
+     * True if the block ends with a jump whose target is only known at run time, such as a return.
+     */
+    public boolean hasIndirectSuccessor() {
+        return indirect;
+    }
+
+    @Override
+    public String toString() {
+        return "block " + getStart() + ".." + getEnd();
+    }
+}
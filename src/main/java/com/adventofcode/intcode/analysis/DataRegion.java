@@ -0,0 +1,37 @@
+package com.adventofcode.intcode.analysis;
+
+/**
+ * Run of cells that no reachable instruction covers, [start, end).
+ */
+public final class DataRegion {
+    private final int start;
+    private final int end;
+    private final boolean constant;
+
+    DataRegion(int start, int end, boolean constant) {
+        this.start = start;
+        this.end = end;
+        this.constant = constant;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    /**
+     * True if no instruction writes to this region with a position or immediate mode address. Relative mode writes
+     * are not resolved, see {@link ProgramAnalysis#hasRelativeWrites()}.
+     */
+    public boolean isConstant() {
+        return constant;
+    }
+
+    @Override
+    public String toString() {
+        return (constant ? "const " : "data ") + start + ".." + end;
+    }
+}
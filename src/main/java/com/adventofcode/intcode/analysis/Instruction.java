@@ -0,0 +1,153 @@
+package com.adventofcode.intcode.analysis;
+
+import com.adventofcode.intcode.Instructions;
+
+/**
+ * One statically decoded Intcode instruction.
+ */
+public final class Instruction {
+    private static final String[] MNEMONICS = {null, "add", "mul", "in", "out", "jnz", "jz", "lt", "eq", "arb"};
+
+    private final int address;
+    private final int instruction;
+    private final long[] parameters;
+
+    Instruction(int address, int instruction, long[] parameters) {
+        this.address = address;
+        this.instruction = instruction;
+        this.parameters = parameters;
+    }
+
+    /**
+     * Number of cells taken by an instruction with this opcode, zero for an unknown opcode.
+     */
+    static int length(int opcode) {
+        switch (opcode) {
+            case 1:
+            case 2:
+            case 7:
+            case 8:
+                return 4;
+            case 5:
+            case 6:
+                return 3;
+            case 3:
+            case 4:
+            case 9:
+                return 2;
+            case 99:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Offset of the parameter this opcode writes to, zero if it does not write.
+     */
+    static int writeOffset(int opcode) {
+        switch (opcode) {
+            case 1:
+            case 2:
+            case 7:
+            case 8:
+                return 3;
+            case 3:
+                return 1;
+            default:
+                return 0;
+        }
+    }
+
+    public int getAddress() {
+        return address;
+    }
+
+    /**
+     * Address of the first cell after this instruction.
+     */
+    public int getEnd() {
+        return address + parameters.length + 1;
+    }
+
+    public int getOpcode() {
+        return Instructions.opcode(instruction);
+    }
+
+    /**
+     * Mode of the parameter at the given offset, starting at 1.
+     */
+    public int getMode(int offset) {
+        return Instructions.mode(instruction, offset);
+    }
+
+    /**
+     * Raw value of the parameter at the given offset, starting at 1.
+     */
+    public long getParameter(int offset) {
+        return parameters[offset - 1];
+    }
+
+    public int getParameterCount() {
+        return parameters.length;
+    }
+
+    public boolean isJump() {
+        int opcode = getOpcode();
+        return opcode == 5 || opcode == 6;
+    }
+
+    /**
+     * True if the jump condition is an immediate that always holds.
+     */
+    public boolean isUnconditionalJump() {
+        return isJump() && getMode(1) == 1 && (getParameter(1) != 0) == (getOpcode() == 5);
+    }
+
+    /**
+     * True if the jump condition is an immediate that never holds.
+     */
+    public boolean isNeverTaken() {
+        return isJump() && getMode(1) == 1 && (getParameter(1) != 0) != (getOpcode() == 5);
+    }
+
+    /**
+     * True if the jump target is known statically, that is an immediate.
+     */
+    public boolean isDirectJump() {
+        return isJump() && getMode(2) == 1;
+    }
+
+    public boolean isHalt() {
+        return getOpcode() == 99;
+    }
+
+    /**
+     * True if control may reach the next instruction.
+     */
+    public boolean fallsThrough() {
+        return !isHalt() && !isUnconditionalJump();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        builder.append(address).append(": ").append(isHalt() ? "hlt" : MNEMONICS[getOpcode()]);
+        for (int offset = 1; offset <= parameters.length; offset++) {
+            builder.append(offset == 1 ? " " : ", ");
+            long parameter = getParameter(offset);
+            switch (getMode(offset)) {
+                case 0:
+                    builder.append('[').append(parameter).append(']');
+                    break;
+                case 1:
+                    builder.append(parameter);
+                    break;
+                default:
+                    builder.append("[rb").append(parameter < 0 ? "" : "+").append(parameter).append(']');
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+}
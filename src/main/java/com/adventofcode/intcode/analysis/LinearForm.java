@@ -0,0 +1,167 @@
+package com.adventofcode.intcode.analysis;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Affine function {@code c + a0 * x0 + a1 * x1 + ...} of a fixed number of symbols, computed with the same wrapping
+ * long arithmetic as the machine, so evaluating it always gives what a concrete run computes.
+ */
+public final class LinearForm {
+    private final long constant;
+    private final long[] coefficients;
+
+    private LinearForm(long constant, long[] coefficients) {
+        this.constant = constant;
+        this.coefficients = coefficients;
+    }
+
+    public static LinearForm constant(int symbols, long value) {
+        return new LinearForm(value, new long[symbols]);
+    }
+
+    public static LinearForm symbol(int symbols, int index) {
+        long[] coefficients = new long[symbols];
+        coefficients[index] = 1;
+        return new LinearForm(0, coefficients);
+    }
+
+    public int getSymbols() {
+        return coefficients.length;
+    }
+
+    public long getConstant() {
+        return constant;
+    }
+
+    public long getCoefficient(int index) {
+        return coefficients[index];
+    }
+
+    public boolean isConstant() {
+        for (long coefficient : coefficients) {
+            if (coefficient != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    LinearForm add(LinearForm other) {
+        long[] sum = new long[coefficients.length];
+        for (int i = 0; i < sum.length; i++) {
+            sum[i] = coefficients[i] + other.coefficients[i];
+        }
+        return new LinearForm(constant + other.constant, sum);
+    }
+
+    /**
+     * Returns the product, or null when both factors depend on some symbol.
+     */
+    LinearForm multiply(LinearForm other) {
+        if (!isConstant() && !other.isConstant()) {
+            return null;
+        }
+        LinearForm form = isConstant() ? other : this;
+        long factor = isConstant() ? constant : other.constant;
+        long[] product = new long[coefficients.length];
+        for (int i = 0; i < product.length; i++) {
+            product[i] = form.coefficients[i] * factor;
+        }
+        return new LinearForm(form.constant * factor, product);
+    }
+
+    public long evaluate(long... values) {
+        long value = constant;
+        for (int i = 0; i < coefficients.length; i++) {
+            value += coefficients[i] * values[i];
+        }
+        return value;
+    }
+
+    /**
+     * Returns the first values, in lexicographic order with each value in [0, bound), for which the form equals the
+     * target. Every prefix of all symbols but the last is tried, the last one is solved for directly as a congruence
+     * modulo 2^64.
+     */
+    public Optional<long[]> solve(long target, long... bounds) {
+        if (bounds.length != coefficients.length) {
+            throw new IllegalArgumentException(bounds.length + " bounds for " + coefficients.length + " symbols");
+        }
+        if (bounds.length == 0) {
+            return constant == target ? Optional.of(new long[0]) : Optional.empty();
+        }
+        for (long bound : bounds) {
+            if (bound <= 0) {
+                return Optional.empty();
+            }
+        }
+        int last = bounds.length - 1;
+        long[] values = new long[bounds.length];
+        while (true) {
+            values[last] = 0;
+            long rest = target - evaluate(values);
+            long value = solveLast(coefficients[last], rest);
+            if (value >= 0 && value < bounds[last]) {
+                values[last] = value;
+                return Optional.of(values);
+            }
+            int i = last - 1;
+            while (i >= 0 && ++values[i] == bounds[i]) {
+                values[i--] = 0;
+            }
+            if (i < 0) {
+                return Optional.empty();
+            }
+        }
+    }
+
+    /**
+     * Smallest unsigned x with {@code coefficient * x == rest} modulo 2^64, or -1 when it has no solution or does not
+     * fit in a non-negative long.
+     */
+    private static long solveLast(long coefficient, long rest) {
+        if (coefficient == 0) {
+            return rest == 0 ? 0 : -1;
+        }
+        int shift = Long.numberOfTrailingZeros(coefficient);
+        if (Long.numberOfTrailingZeros(rest) < shift) {
+            return -1;
+        }
+        long odd = coefficient >> shift;
+        // Newton iteration for the inverse of an odd number modulo 2^64, each step doubles the correct low bits.
+        long inverse = odd;
+        for (int i = 0; i < 5; i++) {
+            inverse *= 2 - odd * inverse;
+        }
+        long x = (rest >> shift) * inverse;
+        if (shift > 0) {
+            x &= -1L >>> shift;
+        }
+        return x;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LinearForm that = (LinearForm) o;
+        return constant == that.constant && Arrays.equals(coefficients, that.coefficients);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(constant) + Arrays.hashCode(coefficients);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder().append(constant);
+        for (int i = 0; i < coefficients.length; i++) {
+            if (coefficients[i] != 0) {
+                sb.append(" + ").append(coefficients[i]).append(" * x").append(i);
+            }
+        }
+        return sb.toString();
+    }
+}
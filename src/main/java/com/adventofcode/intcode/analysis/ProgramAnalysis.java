@@ -0,0 +1,306 @@
+package com.adventofcode.intcode.analysis;
+
+import com.adventofcode.intcode.Instructions;
+import com.adventofcode.intcode.IntcodeProgram;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Static analysis of an Intcode image: the instructions reachable from address 0, their basic blocks and control flow
+ * graph, the cells instructions may write and the data regions in between. Runs in time linear in the image size.
+ * <p>
+ * Decoding follows fall-through and direct jumps. Indirect jumps, mostly returns through the relative base stack, are
+ * resolved by also decoding from every code address the program pushes as a constant, that is an immediate added to
+ * 0 or multiplied by 1. Functions only called through pointer tables are found by decoding from every address some
+ * cell of the image holds, provided the cells right before it are a return or another instruction that does not fall
+ * through.
+ */
+public final class ProgramAnalysis {
+    private final IntcodeProgram program;
+    private final Instruction[] instructions;
+    private final BitSet code;
+    private final BitSet leaders = new BitSet();
+    private final BitSet writable = new BitSet();
+    private final List<BasicBlock> blocks = new ArrayList<>();
+    private final BasicBlock[] blockAt;
+    private final List<DataRegion> dataRegions = new ArrayList<>();
+    private boolean relativeWrites;
+
+    private ProgramAnalysis(IntcodeProgram program) {
+        this.program = program;
+        this.instructions = new Instruction[program.size()];
+        this.code = new BitSet(program.size());
+        this.blockAt = new BasicBlock[program.size()];
+    }
+
+    public static ProgramAnalysis analyze(IntcodeProgram program) {
+        ProgramAnalysis analysis = new ProgramAnalysis(program);
+        analysis.decode();
+        analysis.findBlocks();
+        analysis.findWrites();
+        analysis.findDataRegions();
+        return analysis;
+    }
+
+    private Instruction decodeAt(int address) {
+        long value = program.get(address);
+        if (value < 0 || value >= 100_000) {
+            return null;
+        }
+        int instruction = Instructions.decode(value);
+        int length = Instruction.length(Instructions.opcode(instruction));
+        if (length == 0 || address + length > program.size()) {
+            return null;
+        }
+        long[] parameters = new long[length - 1];
+        for (int offset = 1; offset < length; offset++) {
+            if (Instructions.mode(instruction, offset) > 2) {
+                return null;
+            }
+            parameters[offset - 1] = program.get(address + offset);
+        }
+        return new Instruction(address, instruction, parameters);
+    }
+
+    private boolean isAddress(long value) {
+        return value >= 0 && value < program.size();
+    }
+
+    private boolean followsEndOfCode(int address) {
+        if (address >= 1 && program.get(address - 1) == 99) {
+            return true;
+        }
+        Instruction previous = address >= 3 ? decodeAt(address - 3) : null;
+        return previous != null && previous.isJump() && !previous.fallsThrough();
+    }
+
+    private void decode() {
+        int size = program.size();
+        int[] work = new int[size];
+        int pending = 0;
+        BitSet queued = new BitSet(size);
+        if (size > 0) {
+            work[pending++] = 0;
+            queued.set(0);
+            leaders.set(0);
+        }
+        int[] fallThroughPredecessors = new int[size];
+        for (int address = 0; address < size; address++) {
+            long value = program.get(address);
+            if (isAddress(value) && !queued.get((int) value) && followsEndOfCode((int) value)) {
+                queued.set((int) value);
+                leaders.set((int) value);
+                work[pending++] = (int) value;
+            }
+        }
+        while (pending > 0) {
+            int address = work[--pending];
+            Instruction instruction = decodeAt(address);
+            if (instruction == null) {
+                continue;
+            }
+            instructions[address] = instruction;
+            code.set(address, instruction.getEnd());
+
+            List<Integer> successors = new ArrayList<>(2);
+            int end = instruction.getEnd();
+            if (instruction.fallsThrough() && end < size) {
+                successors.add(end);
+                if (++fallThroughPredecessors[end] > 1) {
+                    leaders.set(end);
+                }
+            }
+            if (instruction.isJump() || instruction.isHalt()) {
+                if (end < size) {
+                    leaders.set(end);
+                }
+                if (instruction.isDirectJump() && !instruction.isNeverTaken() && isAddress(instruction.getParameter(2))) {
+                    int target = (int) instruction.getParameter(2);
+                    leaders.set(target);
+                    successors.add(target);
+                }
+            }
+            int opcode = instruction.getOpcode();
+            if ((opcode == 1 || opcode == 2) && instruction.getMode(1) == 1 && instruction.getMode(2) == 1) {
+                long identity = opcode == 1 ? 0 : 1;
+                for (int offset = 1; offset <= 2; offset++) {
+                    long pushed = instruction.getParameter(offset);
+                    if (instruction.getParameter(3 - offset) == identity && isAddress(pushed) && pushed != 0) {
+                        leaders.set((int) pushed);
+                        successors.add((int) pushed);
+                    }
+                }
+            }
+            for (int successor : successors) {
+                if (!queued.get(successor)) {
+                    queued.set(successor);
+                    work[pending++] = successor;
+                }
+            }
+        }
+        // Leaders pointing at cells that do not decode are not blocks.
+        for (int address = leaders.nextSetBit(0); address >= 0; address = leaders.nextSetBit(address + 1)) {
+            if (instructions[address] == null) {
+                leaders.clear(address);
+            }
+        }
+    }
+
+    private boolean isLeader(long address) {
+        return isAddress(address) && leaders.get((int) address);
+    }
+
+    private void findBlocks() {
+        for (int start = leaders.nextSetBit(0); start >= 0; start = leaders.nextSetBit(start + 1)) {
+            List<Instruction> body = new ArrayList<>();
+            int address = start;
+            Instruction last;
+            do {
+                last = instructions[address];
+                body.add(last);
+                address = last.getEnd();
+            } while (!last.isJump() && !last.isHalt() && address < instructions.length
+                    && instructions[address] != null && !leaders.get(address));
+
+            // Successors are only kept when they start a block, a jump into cells that do not decode has no edge.
+            int fallThrough = last.fallsThrough() && isLeader(address) ? address : -1;
+            long jump = last.isDirectJump() && !last.isNeverTaken() ? last.getParameter(2) : -1;
+            int target = isLeader(jump) ? (int) jump : -1;
+            boolean indirect = last.isJump() && !last.isDirectJump() && !last.isNeverTaken();
+            BasicBlock block = new BasicBlock(body, fallThrough, target, indirect);
+            blocks.add(block);
+            blockAt[start] = block;
+        }
+    }
+
+    private void findWrites() {
+        for (Instruction instruction : instructions) {
+            if (instruction == null) {
+                continue;
+            }
+            int offset = Instruction.writeOffset(instruction.getOpcode());
+            if (offset == 0) {
+                continue;
+            }
+            switch (instruction.getMode(offset)) {
+                case 0:
+                    if (isAddress(instruction.getParameter(offset))) {
+                        writable.set((int) instruction.getParameter(offset));
+                    }
+                    break;
+                case 1:
+                    writable.set(instruction.getAddress() + offset);
+                    break;
+                default:
+                    relativeWrites = true;
+                    break;
+            }
+        }
+    }
+
+    private void findDataRegions() {
+        int start = code.nextClearBit(0);
+        while (start < program.size()) {
+            boolean constant = !writable.get(start);
+            int end = start + 1;
+            while (end < program.size() && !code.get(end) && writable.get(end) != constant) {
+                end++;
+            }
+            dataRegions.add(new DataRegion(start, end, constant));
+            start = code.nextClearBit(end);
+        }
+    }
+
+    public IntcodeProgram getProgram() {
+        return program;
+    }
+
+    /**
+     * Returns the decoded instructions by increasing address. Overlapping instructions are all listed.
+     */
+    public List<Instruction> getInstructions() {
+        List<Instruction> list = new ArrayList<>();
+        for (Instruction instruction : instructions) {
+            if (instruction != null) {
+                list.add(instruction);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns the instruction decoded at this address, null if control never reaches it.
+     */
+    public Instruction getInstruction(int address) {
+        return address >= 0 && address < instructions.length ? instructions[address] : null;
+    }
+
+    public List<BasicBlock> getBlocks() {
+        return Collections.unmodifiableList(blocks);
+    }
+
+    /**
+     * Returns the block starting at this address, null if none does.
+     */
+    public BasicBlock getBlock(int start) {
+        return start >= 0 && start < blockAt.length ? blockAt[start] : null;
+    }
+
+    /**
+     * Returns the cells covered by reachable instructions.
+     */
+    public BitSet getCodeCells() {
+        return (BitSet) code.clone();
+    }
+
+    /**
+     * Returns the image cells some instruction writes with a position or immediate mode address.
+     */
+    public BitSet getWritableCells() {
+        return (BitSet) writable.clone();
+    }
+
+    /**
+     * Returns the writable cells that are also code: the program may modify itself there.
+     */
+    public BitSet getSelfModifyingCells() {
+        BitSet cells = getWritableCells();
+        cells.and(code);
+        return cells;
+    }
+
+    /**
+     * True if some instruction writes through the relative base, which can reach any cell.
+     */
+    public boolean hasRelativeWrites() {
+        return relativeWrites;
+    }
+
+    public List<DataRegion> getDataRegions() {
+        return Collections.unmodifiableList(dataRegions);
+    }
+
+    /**
+     * Returns a listing of the blocks and data regions by increasing address.
+     */
+    public String disassemble() {
+        StringBuilder builder = new StringBuilder();
+        int region = 0;
+        for (BasicBlock block : blocks) {
+            while (region < dataRegions.size() && dataRegions.get(region).getStart() < block.getStart()) {
+                builder.append(dataRegions.get(region++)).append('\n');
+            }
+            builder.append(block).append(':').append('\n');
+            for (Instruction instruction : block.getInstructions()) {
+                builder.append("  ").append(instruction).append('\n');
+            }
+        }
+        while (region < dataRegions.size()) {
+            builder.append(dataRegions.get(region++)).append('\n');
+        }
+        return builder.toString();
+    }
+}
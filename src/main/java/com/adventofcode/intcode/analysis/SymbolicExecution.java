@@ -0,0 +1,213 @@
+package com.adventofcode.intcode.analysis;
+
+import com.adventofcode.intcode.Instructions;
+import com.adventofcode.intcode.IntcodeProgram;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * Runs a program with some cells of the image marked as symbols, every value being a {@link LinearForm} over them.
+ * Programs like Day 2, whose result is an affine function of the noun and verb, give their closed form in one run.
+ * <p>
+ * Control flow must not depend on the symbols: the run gives up as soon as the instruction pointer, a branch
+ * condition, a comparison, a write address or the relative base would depend on one, or on a product of two symbolic
+ * values, an input, or a run past the budget. Reading through a symbolic address gives an unknown value, fine as long
+ * as it is overwritten before it is used, which is how Day 2 ignores the cells its first instruction reads. Such an
+ * address must not decrease with any symbol, so that non-negative values never make it negative.
+ */
+public final class SymbolicExecution {
+    private static final long DEFAULT_BUDGET = 10_000_000L;
+    private static final int MAX_SIZE = 1 << 20;
+
+    private final int symbols;
+    // Null cells hold unknown values.
+    private LinearForm[] cells;
+    private int size;
+    private int position;
+    private long relativeBase;
+    private boolean failed;
+
+    private SymbolicExecution(IntcodeProgram program, int[] cells) {
+        this.symbols = cells.length;
+        this.size = program.size();
+        this.cells = new LinearForm[size];
+        for (int address = 0; address < size; address++) {
+            this.cells[address] = LinearForm.constant(symbols, program.get(address));
+        }
+        for (int i = 0; i < cells.length; i++) {
+            this.cells[cells[i]] = LinearForm.symbol(symbols, i);
+        }
+    }
+
+    /**
+     * Returns the value of the {@code result} cell once the program halts, as a function of the initial values of the
+     * given cells, or nothing if the run leaves the linear fragment or the result is unknown.
+     */
+    public static Optional<LinearForm> closedForm(IntcodeProgram program, int result, int... cells) {
+        return closedForm(program, result, cells, DEFAULT_BUDGET);
+    }
+
+    public static Optional<LinearForm> closedForm(IntcodeProgram program, int result, int[] cells, long budget) {
+        SymbolicExecution execution = new SymbolicExecution(program, cells);
+        if (!execution.run(budget)) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(execution.read(result)).filter(form -> !execution.failed);
+    }
+
+    private boolean run(long budget) {
+        for (long steps = 0; position < size; steps++) {
+            LinearForm word = cells[position];
+            if (steps == budget || word == null || !word.isConstant()) {
+                return false;
+            }
+            int instruction = Instructions.decode(word.getConstant());
+            switch (Instructions.opcode(instruction)) {
+                case 1:
+                case 2: {
+                    LinearForm a = parameter(instruction, 1);
+                    LinearForm b = parameter(instruction, 2);
+                    LinearForm value = null;
+                    if (a != null && b != null) {
+                        value = Instructions.opcode(instruction) == 1 ? a.add(b) : a.multiply(b);
+                        failed |= value == null;
+                    }
+                    write(instruction, 3, value);
+                    position += 4;
+                    break;
+                }
+                case 4:
+                    parameter(instruction, 1);
+                    position += 2;
+                    break;
+                case 5:
+                case 6: {
+                    LinearForm condition = parameter(instruction, 1);
+                    LinearForm target = parameter(instruction, 2);
+                    if (!isConstant(condition) || !isConstant(target)) {
+                        return false;
+                    }
+                    boolean jump = (condition.getConstant() != 0) == (Instructions.opcode(instruction) == 5);
+                    if (jump && (target.getConstant() < 0 || target.getConstant() >= MAX_SIZE)) {
+                        return false;
+                    }
+                    position = jump ? (int) target.getConstant() : position + 3;
+                    break;
+                }
+                case 7:
+                case 8: {
+                    LinearForm a = parameter(instruction, 1);
+                    LinearForm b = parameter(instruction, 2);
+                    if (!isConstant(a) || !isConstant(b)) {
+                        return false;
+                    }
+                    boolean test = Instructions.opcode(instruction) == 7
+                            ? a.getConstant() < b.getConstant()
+                            : a.getConstant() == b.getConstant();
+                    write(instruction, 3, LinearForm.constant(symbols, test ? 1 : 0));
+                    position += 4;
+                    break;
+                }
+                case 9: {
+                    LinearForm offset = parameter(instruction, 1);
+                    if (!isConstant(offset)) {
+                        return false;
+                    }
+                    relativeBase += offset.getConstant();
+                    position += 2;
+                    break;
+                }
+                case 99:
+                    return true;
+                default:
+                    // Inputs and invalid instructions alike.
+                    return false;
+            }
+            if (failed) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isConstant(LinearForm form) {
+        return form != null && form.isConstant();
+    }
+
+    private LinearForm read(long address) {
+        if (address < 0) {
+            failed = true;
+            return null;
+        }
+        return address < size ? cells[(int) address] : LinearForm.constant(symbols, 0);
+    }
+
+    /**
+     * Address of a parameter in position or relative mode, or null when it is not known.
+     */
+    private LinearForm address(int instruction, int offset) {
+        LinearForm cell = read(position + offset);
+        if (cell == null) {
+            return null;
+        }
+        switch (Instructions.mode(instruction, offset)) {
+            case 0:
+                return cell;
+            case 2:
+                return cell.add(LinearForm.constant(symbols, relativeBase));
+            default:
+                failed = true;
+                return null;
+        }
+    }
+
+    /**
+     * Value of a parameter, null when it is unknown.
+     */
+    private LinearForm parameter(int instruction, int offset) {
+        if (Instructions.mode(instruction, offset) == 1) {
+            return read(position + offset);
+        }
+        LinearForm address = address(instruction, offset);
+        if (address == null) {
+            failed = true;
+            return null;
+        }
+        if (address.isConstant()) {
+            return read(address.getConstant());
+        }
+        failed |= !isNonDecreasing(address);
+        return null;
+    }
+
+    private static boolean isNonDecreasing(LinearForm address) {
+        if (address.getConstant() < 0) {
+            return false;
+        }
+        for (int i = 0; i < address.getSymbols(); i++) {
+            if (address.getCoefficient(i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void write(int instruction, int offset, LinearForm value) {
+        LinearForm address = address(instruction, offset);
+        if (!isConstant(address) || address.getConstant() < 0 || address.getConstant() >= MAX_SIZE) {
+            failed = true;
+            return;
+        }
+        int target = (int) address.getConstant();
+        if (target >= size) {
+            if (target >= cells.length) {
+                int from = cells.length;
+                cells = Arrays.copyOf(cells, Math.max(target + 1, Math.min(2 * cells.length, MAX_SIZE)));
+                Arrays.fill(cells, from, cells.length, LinearForm.constant(symbols, 0));
+            }
+            size = target + 1;
+        }
+        cells[target] = value;
+    }
+}
@@ -1,24 +1,35 @@
 package com.adventofcode;
 
+import com.adventofcode.intcode.IntcodeProgram;
+import com.adventofcode.intcode.IntcodeSearch;
 import com.adventofcode.utils.FileUtils;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class Day02Test {
     static int solvePuzzle(String input, int objective) {
-        for (int noun = 0; noun < 100; ++noun) {
-            for (int verb = 0; verb < 100; ++verb) {
-                long[] output = Intcode.intcode(input, noun, verb);
-                if (output[0] == objective) {
-                    return 100 * noun + verb;
-                }
-            }
-        }
+        IntcodeSearch search = new IntcodeSearch(IntcodeProgram.of(input), 1, 2);
+        return search.find(objective, 100, 100).map(Day02Test::answer).orElse(-1);
+    }
+
+    static int solvePuzzle(String input, int objective, ExecutorService executorService, int tasks) {
+        IntcodeSearch search = new IntcodeSearch(IntcodeProgram.of(input), 1, 2);
+        return search.find(objective, new long[]{100, 100}, executorService, tasks).map(Day02Test::answer).orElse(-1);
+    }
+
+    static int solveClosedForm(String input, int objective) {
+        IntcodeSearch search = IntcodeSearch.closedForm(IntcodeProgram.of(input), 1, 2);
+        assertThat(search.getClosedForm()).isPresent();
+        return search.find(objective, 100, 100).map(Day02Test::answer).orElse(-1);
+    }
 
-        return -1;
+    private static int answer(long[] nounVerb) {
+        return (int) (100 * nounVerb[0] + nounVerb[1]);
     }
 
     /**
@@ -151,5 +162,18 @@ public class Day02Test {
     void testInputPartTwo() throws IOException {
         String input = FileUtils.readLine("/day/2/input");
         assertThat(solvePuzzle(input, 19690720)).isEqualTo(6718);
+        assertThat(solveClosedForm(input, 19690720)).isEqualTo(6718);
+    }
+
+    @Test
+    void testParallelInputPartTwo() throws IOException {
+        String input = FileUtils.readLine("/day/2/input");
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            assertThat(solvePuzzle(input, 19690720, executorService, 8)).isEqualTo(solveClosedForm(input, 19690720));
+            assertThat(solvePuzzle(input, -1, executorService, 8)).isEqualTo(solveClosedForm(input, -1)).isEqualTo(-1);
+        } finally {
+            executorService.shutdownNow();
+        }
     }
 }
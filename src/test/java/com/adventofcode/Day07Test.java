@@ -7,6 +7,7 @@ import org.testng.annotations.Test;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.OptionalLong;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -184,4 +185,30 @@ public class Day07Test {
         assertThat(max.getLeft()).containsExactly(5L, 8L, 6L, 9L, 7L);
         assertThat(max.getRight()).isEqualTo(36497698);
     }
+
+    @Test
+    void testParallelInputPartTwo() throws IOException {
+        String program = FileUtils.readLine("/day/7/input");
+        Pair<List<Long>, Long> max = Intcode.maxThrusterSignal(program, 4, OptionalLong.empty(), 9L, 8L, 7L, 6L, 5L);
+        assertThat(max.getLeft()).containsExactly(5L, 8L, 6L, 9L, 7L);
+        assertThat(max.getRight()).isEqualTo(36497698);
+    }
+
+    @Test
+    void testParallelBound() throws IOException {
+        String program = FileUtils.readLine("/day/7/input");
+        Pair<List<Long>, Long> max = Intcode.maxThrusterSignal(program, 4, OptionalLong.of(20_000_000L), 9L, 8L, 7L, 6L, 5L);
+        assertThat(max.getRight()).isGreaterThanOrEqualTo(20_000_000L);
+        assertThat(Intcode.thrusterSignal(program, max.getLeft())).isEqualTo(max.getRight());
+    }
+
+    @Test
+    void testChainedInputPartOne() throws IOException {
+        Intcode.ThrusterSearchResult result = Intcode.maxChainedThrusterSignal(FileUtils.readLine("/day/7/input"), 0L, 1L, 2L, 3L, 4L);
+        assertThat(result.getSettings()).containsExactly(1L, 3L, 0L, 4L, 2L);
+        assertThat(result.getSignal()).isEqualTo(24625);
+        // 5 + 20 + 60 + 120 + 120 runs instead of 5 * 120.
+        assertThat(result.getRuns()).isEqualTo(325);
+        assertThat(result.getSavedRuns()).isEqualTo(275);
+    }
 }
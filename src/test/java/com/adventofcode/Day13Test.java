@@ -1,10 +1,16 @@
 package com.adventofcode;
 
+import com.adventofcode.intcode.IntcodeMachine;
+import com.adventofcode.intcode.IntcodeProgram;
+import com.adventofcode.intcode.TraceRecorder;
+import com.adventofcode.intcode.TraceReplay;
 import com.adventofcode.map.Map2D;
 import com.adventofcode.map.Point2D;
 import com.adventofcode.utils.FileUtils;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
@@ -86,6 +92,33 @@ public class Day13Test {
         assertThat(game.getScore()).isEqualTo(16999);
     }
 
+    @Test
+    void testGameReplay() throws IOException {
+        String line = FileUtils.readLine("/day/13/input");
+        line = '2' + line.substring(1);
+        Arkanoid game = new Arkanoid();
+        IntcodeMachine machine = new IntcodeMachine(IntcodeProgram.of(line));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TraceRecorder recorder = new TraceRecorder(machine, bytes, 1_000)) {
+            machine.run(game::gameInput, game::gameOutput);
+            assertThat(recorder.getCheckpoints()).isGreaterThan(1);
+        }
+
+        // The replay needs neither the game nor the image, the final score is the last output.
+        TraceReplay replay = TraceReplay.read(new ByteArrayInputStream(bytes.toByteArray()));
+        long[] outputs = replay.outputs(0, replay.size());
+        assertThat(outputs[outputs.length - 1]).isEqualTo(16999);
+        assertThat(replay.seek(replay.size()).run()).isEqualTo(IntcodeMachine.State.HALTED);
+
+        // Any point of the game, reached from the nearest checkpoint, resumes with the recorded outputs.
+        int middle = replay.size() / 2 + 1;
+        IntcodeMachine resumed = replay.seek(middle);
+        for (int event = middle; event < middle + 30 && !replay.isInput(event); event++) {
+            assertThat(resumed.run()).isEqualTo(IntcodeMachine.State.OUTPUT);
+            assertThat(resumed.getOutput()).isEqualTo(replay.getValue(event));
+        }
+    }
+
     private static class Arkanoid {
         private int count = 0;
         private int x;
@@ -1,6 +1,8 @@
 package com.adventofcode;
 
 import com.adventofcode.graph.Dijkstra;
+import com.adventofcode.intcode.IntcodeMachine;
+import com.adventofcode.intcode.IntcodeProgram;
 import com.adventofcode.map.Direction;
 import com.adventofcode.map.Map2D;
 import com.adventofcode.map.Point2D;
@@ -9,7 +11,9 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -37,6 +41,37 @@ public class Day15Test {
         }
     }
 
+    /**
+     * Breadth first exploration: every reachable position keeps the machine state that got there, and each move is
+     * tried on a fork of it instead of walking the robot back.
+     */
+    private static Map2D explore(String line, Point2D origin) {
+        Map2D map = new Map2D();
+        map.put(origin, 1L);
+        Deque<Pair<Point2D, IntcodeMachine>> queue = new ArrayDeque<>();
+        queue.add(Pair.of(origin, new IntcodeMachine(IntcodeProgram.of(line).copy())));
+        while (!queue.isEmpty()) {
+            Pair<Point2D, IntcodeMachine> current = queue.poll();
+            for (Direction d : Direction.values()) {
+                Point2D newPosition = current.getLeft().move(d);
+                if (map.containsKey(newPosition)) {
+                    continue;
+                }
+                IntcodeMachine machine = current.getRight().fork();
+                machine.input(convertDirection(d));
+                if (machine.run() != IntcodeMachine.State.OUTPUT) {
+                    throw new IllegalStateException("robot did not answer");
+                }
+                long move = machine.getOutput();
+                map.put(newPosition, move);
+                if (move != 0) {
+                    queue.add(Pair.of(newPosition, machine));
+                }
+            }
+        }
+        return map;
+    }
+
     private static int convertDirection(Direction d) {
         return d.ordinal() + 1;
     }
@@ -225,4 +260,46 @@ public class Day15Test {
         int duration = oxygenFill.values().stream().mapToInt(x -> x).max().orElse(0);
         assertThat(duration).isEqualTo(322);
     }
+
+    @Test
+    void testSynchronousCartography() throws IOException {
+        String line = FileUtils.readLine("/day/15/input");
+        Point2D origin = new Point2D(0, 0);
+        Map2D map = new Map2D();
+        try (Intcode.Robot robot = Intcode.Robot.synchronous(line)) {
+            cartography(robot, map, new Stack<>(), new HashSet<>(), origin);
+        }
+
+        Point2D oxygen = map.entrySet().stream().filter(e -> e.getValue() == 2).map(Map.Entry::getKey).findFirst().get();
+        Dijkstra<Point2D> dijkstra = new Dijkstra<>(createGraph(map));
+
+        assertThat(dijkstra.computeDistance(origin)).contains(entry(oxygen, 240));
+        int duration = dijkstra.computeDistance(oxygen).values().stream().mapToInt(x -> x).max().orElse(0);
+        assertThat(duration).isEqualTo(322);
+    }
+
+    @Test
+    void testExploreWithForks() throws IOException {
+        String line = FileUtils.readLine("/day/15/input");
+        Point2D origin = new Point2D(0, 0);
+        Map2D map = explore(line, origin);
+
+        Point2D oxygen = map.entrySet().stream().filter(e -> e.getValue() == 2).map(Map.Entry::getKey).findFirst().get();
+        Dijkstra<Point2D> dijkstra = new Dijkstra<>(createGraph(map));
+
+        assertThat(dijkstra.computeDistance(origin)).contains(entry(oxygen, 240));
+        int duration = dijkstra.computeDistance(oxygen).values().stream().mapToInt(x -> x).max().orElse(0);
+        assertThat(duration).isEqualTo(322);
+    }
+
+    @Test
+    void testSynchronousRobotMatchesThreaded() throws IOException {
+        String line = FileUtils.readLine("/day/15/input");
+        try (Intcode.Robot threaded = new Intcode.Robot(line); Intcode.Robot synchronous = Intcode.Robot.synchronous(line)) {
+            for (int i = 0; i < 1000; i++) {
+                long move = i * 7 % 4 + 1;
+                assertThat(synchronous.action(move)).isEqualTo(threaded.action(move));
+            }
+        }
+    }
 }
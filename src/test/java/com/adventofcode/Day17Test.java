@@ -1,5 +1,6 @@
 package com.adventofcode;
 
+import com.adventofcode.intcode.AsciiPort;
 import com.adventofcode.map.Direction;
 import com.adventofcode.map.Point2D;
 import com.adventofcode.utils.FileUtils;
@@ -10,8 +11,6 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.LongSupplier;
 import java.util.stream.Collectors;
@@ -167,7 +166,9 @@ public class Day17Test {
     void testInputPartOne() throws IOException {
         String line = FileUtils.readLine("/day/17/input");
         StringBuilder sb = new StringBuilder();
-        Intcode.intcode(line, () -> 0, (i) -> sb.append((char) i));
+        AsciiPort.of(line, l -> sb.append(l).append('\n'), v -> {
+            throw new IllegalStateException("camera output " + v);
+        }).run();
 
         String map = sb.toString();
         System.out.println(map);
@@ -312,7 +313,9 @@ public class Day17Test {
     void testInputPartTwo() throws IOException {
         String line = FileUtils.readLine("/day/17/input");
         StringBuilder sb = new StringBuilder();
-        Intcode.intcode(line, () -> 0, (i) -> sb.append((char) i));
+        AsciiPort.of(line, l -> sb.append(l).append('\n'), v -> {
+            throw new IllegalStateException("camera output " + v);
+        }).run();
         System.out.println(sb.toString());
         List<Pair<Character, Integer>> commands = findPath(sb.toString());
 
@@ -333,19 +336,12 @@ public class Day17Test {
                 + "L,6,R,12,R,12,R,10\n"
                 + "n\n";
 
-        BlockingQueue<Long> input = new LinkedBlockingQueue<>();
-        inputCommand.chars().mapToLong(t -> t).forEach(input::add);
-
         StringBuilder out = new StringBuilder();
         AtomicLong dust = new AtomicLong();
 
-        Intcode.intcode("2" + line.substring(1), Intcode.take(input), (long o) -> {
-            if (o < 255) {
-                out.append((char) o);
-            } else {
-                dust.set(o);
-            }
-        });
+        AsciiPort.of("2" + line.substring(1), l -> out.append(l).append('\n'), dust::set)
+                .write(inputCommand)
+                .run();
 
         System.out.println(out.toString());
 
@@ -1,52 +1,47 @@
 package com.adventofcode;
 
+import com.adventofcode.intcode.IntcodeBatch;
+import com.adventofcode.intcode.IntcodeOracle;
+import com.adventofcode.intcode.IntcodeProgram;
 import com.adventofcode.map.Map2D;
 import com.adventofcode.map.Point2D;
 import com.adventofcode.utils.FileUtils;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
-import java.util.ArrayDeque;
-import java.util.Queue;
-import java.util.concurrent.atomic.AtomicLong;
+import java.util.Arrays;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class Day19Test {
-    private static boolean tractorBeam(String line, long x, long y) {
+    private static boolean tractorBeam(IntcodeOracle oracle, long x, long y) {
         if (x < 0 || y < 0) {
             return false;
         }
-        Queue<Long> input = new ArrayDeque<>();
-        input.add(x);
-        input.add(y);
-        AtomicLong output = new AtomicLong();
-        Intcode.intcode(line, input::poll, output::set);
-
-        return output.get() != 0L;
+        return oracle.first(x, y) != 0L;
     }
 
-    private static Point2D findSquare(String line, int yStart, int yOffset) {
+    private static Point2D findSquare(IntcodeOracle oracle, int yStart, int yOffset) {
         boolean trackBeam = false;
-        double slope = findSlope(line);
+        double slope = findSlope(oracle);
         for (int y = yStart; ; y += yOffset) {
             for (int x = (int) (y * slope); ; ++x) {
-                boolean beam = tractorBeam(line, x, y);
+                boolean beam = tractorBeam(oracle, x, y);
                 if (!trackBeam) {
                     trackBeam = beam;
-                } else if (!beam || !tractorBeam(line, x + 99, y)) {
+                } else if (!beam || !tractorBeam(oracle, x + 99, y)) {
                     break;
                 }
-                if (tractorBeam(line, x, y + 99)) {
+                if (tractorBeam(oracle, x, y + 99)) {
                     return new Point2D(x, y);
                 }
             }
         }
     }
 
-    private static double findSlope(String line) {
+    private static double findSlope(IntcodeOracle oracle) {
         for (long x = 0; ; x++) {
-            if (tractorBeam(line, x, 100))
+            if (tractorBeam(oracle, x, 100))
                 return x / 100D;
         }
     }
@@ -90,14 +85,14 @@ public class Day19Test {
      */
     @Test
     void testInputPartOne() throws IOException {
-        String line = FileUtils.readLine("/day/19/input");
+        IntcodeOracle oracle = new IntcodeOracle(IntcodeProgram.parse(FileUtils.readLine("/day/19/input")), 4096);
 
         long count = 0;
 
         Map2D map = new Map2D();
         for (int x = 0; x < 50; x++) {
             for (int y = 0; y < 50; y++) {
-                if (tractorBeam(line, x, y)) {
+                if (tractorBeam(oracle, x, y)) {
                     count++;
                     map.put(new Point2D(x, y), 1L);
                 } else {
@@ -110,6 +105,18 @@ public class Day19Test {
         assertThat(count).isEqualTo(166);
     }
 
+    @Test
+    void testBatchInputPartOne() throws IOException {
+        IntcodeProgram program = IntcodeProgram.parse(FileUtils.readLine("/day/19/input"));
+        long[][] inputs = new long[50 * 50][];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = new long[]{i % 50, i / 50};
+        }
+
+        long count = Arrays.stream(new IntcodeBatch(program, inputs).run()).filter(output -> output[0] != 0).count();
+        assertThat(count).isEqualTo(166);
+    }
+
     /**
      * --- Part Two ---
      * You aren't sure how large Santa's ship is. You aren't even sure if you'll need to use this thing on Santa's ship,
@@ -165,11 +172,13 @@ public class Day19Test {
      */
     @Test
     void testInputPartTwo() throws IOException {
-        String line = FileUtils.readLine("/day/19/input");
+        IntcodeOracle oracle = new IntcodeOracle(IntcodeProgram.parse(FileUtils.readLine("/day/19/input")), 4096);
 
-        Point2D position = findSquare(line, 100, 30); //y must be at least 100 to fit 100x100 square
-        position = findSquare(line, position.getY() - 30, 1);
+        Point2D position = findSquare(oracle, 100, 30); //y must be at least 100 to fit 100x100 square
+        position = findSquare(oracle, position.getY() - 30, 1);
         long result = position.getX() * 10000 + position.getY();
         assertThat(result).isEqualTo(3790981);
+        // The fine search probes again the rows of the coarse one.
+        assertThat(oracle.getHits()).isPositive();
     }
 }
@@ -1,29 +1,21 @@
 package com.adventofcode;
 
+import com.adventofcode.intcode.AsciiPort;
 import com.adventofcode.utils.FileUtils;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 public class Day21Test {
     private static long runSpringscript(String line, String command) {
-        BlockingQueue<Long> queue = new LinkedBlockingQueue<>();
-        command.chars().mapToLong(t -> t).forEach(queue::add);
         AtomicLong result = new AtomicLong();
-        Intcode.intcode(line, Intcode.take(queue), c -> {
-            if (c < 256) {
-                System.out.print((char) c);
-                // sb.append((char) c);
-            } else {
-                System.out.println(c);
-                result.set(c);
-            }
-        });
+        AsciiPort.of(line, System.out::println, c -> {
+            System.out.println(c);
+            result.set(c);
+        }).write(command).run();
 
         return result.get();
     }
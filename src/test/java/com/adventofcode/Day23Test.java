@@ -1,13 +1,18 @@
 package com.adventofcode;
 
+import com.adventofcode.intcode.IdleTracker;
+import com.adventofcode.intcode.IntcodeNetwork;
+import com.adventofcode.intcode.IntcodeProgram;
+import com.adventofcode.intcode.Packet;
 import com.adventofcode.utils.FileUtils;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -88,12 +93,35 @@ public class Day23Test {
         }
     }
 
+    @Test
+    void testSimulatedNetwork() throws IOException {
+        IntcodeProgram program = IntcodeProgram.parse(FileUtils.readLine("/day/23/input"));
+        assertThat(new IntcodeNetwork(program, 50).runUntilNat().getY()).isEqualTo(20367);
+
+        IntcodeNetwork network = new IntcodeNetwork(program, 50);
+        assertThat(network.runNat()).isEqualTo(15080);
+
+        // No timing involved: a second network goes through exactly the same rounds.
+        IntcodeNetwork replay = new IntcodeNetwork(program, 50);
+        replay.runNat();
+        assertThat(replay.getRounds()).isEqualTo(network.getRounds());
+        assertThat(replay.getPackets()).isEqualTo(network.getPackets());
+    }
+
+    /**
+     * Threaded network: every computer runs on its own thread and hands its packets straight to their destination.
+     * Idleness is tracked by an {@link IdleTracker}: a computer reports idle when it polls an empty queue a second
+     * time without sending anything in between, and blocks until a packet arrives.
+     */
     static class NetworkInterfaceController implements AutoCloseable {
         private final NetworkComputer[] computers = new NetworkComputer[50];
+        private final IdleTracker idleTracker = new IdleTracker(50);
+        private final BlockingQueue<Packet> natQueue = new LinkedBlockingQueue<>();
+        private volatile Packet natPacket;
 
         public NetworkInterfaceController(String program) {
             for (int i = 0; i < 50; i++) {
-                computers[i] = new NetworkComputer(program, i);
+                computers[i] = new NetworkComputer(program, i, this, idleTracker);
             }
         }
 
@@ -103,66 +131,40 @@ public class Day23Test {
             }
         }
 
-        public long runNetworkInterfaceController() {
-            while (true) {
-                List<Packet> packets = new ArrayList<>();
-                for (NetworkComputer computer : computers) {
-                    computer.outputQueue().drainTo(packets);
-                }
-
-                for (Packet packet : packets) {
-                    if (packet.getAddress() == 255) {
-                        return packet.getY();
-                    } else if (packet.getAddress() < 50) {
-                        computers[(int) packet.getAddress()].inputQueue().offer(packet.getX());
-                        computers[(int) packet.getAddress()].inputQueue().offer(packet.getY());
-                    }
-                }
+        private void route(Packet packet) {
+            if (packet.getAddress() == 255) {
+                natPacket = packet;
+                natQueue.offer(packet);
+            } else if (packet.getAddress() < 50) {
+                computers[(int) packet.getAddress()].deliver(packet.getX(), packet.getY());
+            }
+        }
 
-                for (NetworkComputer computer : computers) {
-                    if (computer.inputQueue().isEmpty()) {
-                        computer.inputQueue().offer(-1L);
-                    }
-                    computer.run();
-                }
+        public long runNetworkInterfaceController() {
+            try {
+                return natQueue.take().getY();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
             }
         }
 
         public long runNotAlwaysTransmitting() {
-            Packet natPacket = null;
             Long prevY = null;
-            while (true) {
-                boolean idle = Arrays.stream(computers).filter(c -> c.inputQueue().isEmpty() && c.outputQueue().isEmpty()).count() == 50;
-                if (idle && natPacket != null) {
-                    computers[0].inputQueue().offer(natPacket.getX());
-                    computers[0].inputQueue().offer(natPacket.getY());
-                    if (Objects.equals(prevY, natPacket.getY())) {
-                        return prevY;
-                    }
-
-                    prevY = natPacket.getY();
-                }
-
-                List<Packet> packets = new ArrayList<>();
-                for (NetworkComputer computer : computers) {
-                    computer.outputQueue().drainTo(packets);
-                }
-
-                for (Packet packet : packets) {
-                    if (packet.getAddress() == 255) {
-                        natPacket = packet;
-                    } else if (packet.getAddress() < 50) {
-                        computers[(int) packet.getAddress()].inputQueue().offer(packet.getX());
-                        computers[(int) packet.getAddress()].inputQueue().offer(packet.getY());
+            try {
+                while (true) {
+                    idleTracker.awaitIdle();
+                    Packet packet = natPacket;
+                    if (packet == null) {
+                        throw new IllegalStateException("network idle before any packet reached the NAT");
                     }
-                }
-
-                for (NetworkComputer computer : computers) {
-                    if (computer.inputQueue().isEmpty()) {
-                        computer.inputQueue().offer(-1L);
+                    if (Objects.equals(prevY, packet.getY())) {
+                        return prevY;
                     }
-                    computer.run();
+                    prevY = packet.getY();
+                    computers[0].deliver(packet.getX(), packet.getY());
                 }
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
             }
         }
 
@@ -178,104 +180,88 @@ public class Day23Test {
 
     static class NetworkComputer implements AutoCloseable {
         private final ExecutorService executor;
-        private final long address;
-        private final BlockingQueue<Long> queue;
-        private final List<Long> receivedPackets;
-        private final BlockingQueue<Packet> outputQueue = new LinkedBlockingQueue<>();
-
-        NetworkComputer(String program, long address) {
+        private final int address;
+        private final NetworkInterfaceController controller;
+        private final IdleTracker idleTracker;
+        private final Queue<Long> queue = new ArrayDeque<>();
+        private final List<Long> receivedPackets = new ArrayList<>();
+        private boolean started;
+        private int emptyPolls;
+
+        NetworkComputer(String program, int address, NetworkInterfaceController controller, IdleTracker idleTracker) {
             this.address = address;
+            this.controller = controller;
+            this.idleTracker = idleTracker;
+            this.queue.add((long) address);
             this.executor = Executors.newSingleThreadExecutor();
-            this.queue = new LinkedBlockingQueue<>();
-            this.receivedPackets = new ArrayList<>();
             executor.submit(() -> {
                 Intcode.intcode(program, this::input, this::output);
             });
         }
 
-        public BlockingQueue<Long> inputQueue() {
-            return queue;
-        }
-
-        public BlockingQueue<Packet> outputQueue() {
-            return outputQueue;
-        }
-
         public void start() {
             synchronized (queue) {
-                queue.add(address);
+                started = true;
+                queue.notifyAll();
             }
         }
 
-        public void run() {
+        public void deliver(long x, long y) {
             synchronized (queue) {
+                idleTracker.busy(address);
+                queue.add(x);
+                queue.add(y);
                 queue.notifyAll();
             }
         }
 
         private long input() {
             synchronized (queue) {
-                while (true) {
-                    Long head = queue.poll();
-                    if (head != null) {
-                        return head;
+                // Packets may be queued behind the address before start(), but no -1 is handed out until then.
+                while (!started) {
+                    try {
+                        queue.wait();
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
                     }
-
+                }
+                Long head = queue.poll();
+                if (head != null) {
+                    emptyPolls = 0;
+                    return head;
+                }
+                if (emptyPolls++ == 0) {
+                    return -1;
+                }
+                idleTracker.idle(address);
+                while (queue.isEmpty()) {
                     try {
                         queue.wait();
                     } catch (InterruptedException e) {
                         throw new IllegalStateException(e);
                     }
                 }
+                emptyPolls = 0;
+                return queue.poll();
             }
         }
 
         private void output(long l) {
+            synchronized (queue) {
+                emptyPolls = 0;
+            }
             receivedPackets.add(l);
             if (receivedPackets.size() == 3) {
                 Packet packet = new Packet(receivedPackets.get(0), receivedPackets.get(1), receivedPackets.get(2));
                 System.out.println("Computer " + address + " received " + packet);
-                outputQueue.add(packet);
                 receivedPackets.clear();
+                controller.route(packet);
             }
         }
 
         @Override
         public void close() {
-            executor.shutdown();
-        }
-    }
-
-    static class Packet {
-        private final long address;
-        private final long x;
-        private final long y;
-
-        public Packet(long address, long x, long y) {
-            this.address = address;
-            this.x = x;
-            this.y = y;
-        }
-
-        public long getAddress() {
-            return address;
-        }
-
-        public long getX() {
-            return x;
-        }
-
-        public long getY() {
-            return y;
-        }
-
-        @Override
-        public String toString() {
-            return "Packet{" +
-                    "address=" + address +
-                    ", x=" + x +
-                    ", y=" + y +
-                    '}';
+            executor.shutdownNow();
         }
     }
 }
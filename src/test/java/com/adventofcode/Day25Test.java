@@ -1,11 +1,16 @@
 package com.adventofcode;
 
+import com.adventofcode.intcode.AsciiPort;
+import com.adventofcode.intcode.IntcodeCheckpoint;
+import com.adventofcode.intcode.IntcodeMachine;
 import com.adventofcode.map.Direction;
 import com.adventofcode.utils.FileUtils;
 import com.google.common.collect.ImmutableSet;
 import org.testng.annotations.Test;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.Deque;
@@ -16,10 +21,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -61,6 +62,41 @@ public class Day25Test {
         throw new IllegalStateException("Cannot find password!");
     }
 
+    /**
+     * Explores the ship and drops every item at the security checkpoint, saves the machine there, then tries each set
+     * of items from a machine loaded from that checkpoint rather than taking and dropping them in turn.
+     */
+    private static String findPasswordFromCheckpoint(String program, Path checkpoint) throws IOException {
+        Droid droid = new Droid(ImmutableSet.of("molten lava", "infinite loop", "giant electromagnet", "photons", "escape pod"));
+        Position position = droid.start(program);
+        Deque<Direction> path = new LinkedList<>();
+        for (Direction direction : position.getDirections()) {
+            droid.walk(position, direction, path);
+        }
+        for (Direction direction : droid.paths.get("Security Checkpoint")) {
+            droid.doCommand(direction.name().toLowerCase());
+        }
+        List<String> items = new ArrayList<>(droid.items);
+        for (String item : items) {
+            droid.doCommand("drop " + item);
+        }
+        IntcodeCheckpoint.save(droid.port.getMachine(), checkpoint);
+
+        IntcodeMachine saved = IntcodeCheckpoint.load(checkpoint);
+        for (long l = 0; l < (1 << items.size()); l++) {
+            Droid trial = new Droid(droid.forbiddenItems);
+            trial.resume(saved.fork());
+            BitSet bitSet = BitSet.valueOf(new long[]{l});
+            IntStream.range(0, items.size()).filter(bitSet::get).forEach(i -> trial.doCommand("take " + items.get(i)));
+            Position doCommand = trial.doCommand(droid.exit.name().toLowerCase());
+            if (!"Security Checkpoint".equals(doCommand.getPosition())) {
+                return doCommand.getMessage().trim();
+            }
+        }
+
+        throw new IllegalStateException("Cannot find password!");
+    }
+
     /**
      * --- Day 25: Cryostasis ---
      * As you approach Santa's ship, your sensors report two important details:
@@ -110,11 +146,20 @@ public class Day25Test {
                 "\"Oh, hello! You should be able to get in by typing 4362 on the keypad at the main airlock.\"");
     }
 
+    @Test
+    void testFindPasswordFromCheckpoint() throws IOException {
+        String line = FileUtils.readLine("/day/25/input");
+        Path checkpoint = Files.createTempFile("day25", ".checkpoint");
+        try {
+            assertThat(findPasswordFromCheckpoint(line, checkpoint)).isEqualTo(findPassword(line));
+        } finally {
+            Files.deleteIfExists(checkpoint);
+        }
+    }
+
     public static class Droid {
-        private final BlockingQueue<Long> instructions = new LinkedBlockingQueue<>();
-        private final BlockingQueue<String> consoleOutput = new LinkedBlockingQueue<>();
-        private final StringBuilder stringBuilder = new StringBuilder();
-        private final ExecutorService executor;
+        private final StringBuilder consoleOutput = new StringBuilder();
+        private AsciiPort port;
         private final Set<String> forbiddenItems;
         private final Set<String> items = new HashSet<>();
         private final Set<Position> seenPosition = new HashSet<>();
@@ -123,7 +168,6 @@ public class Day25Test {
 
         public Droid(Set<String> forbiddenItems) {
             this.forbiddenItems = forbiddenItems;
-            executor = Executors.newSingleThreadExecutor();
         }
 
         private static Position parseOutput(String output) {
@@ -170,49 +214,24 @@ public class Day25Test {
         }
 
         public Position start(String program) {
-            executor.submit(() -> {
-                Intcode.intcode(program, this::input, this::output);
-                consoleOutput.offer(stringBuilder.toString());
-                stringBuilder.setLength(0);
-                return null;
-            });
+            port = AsciiPort.of(program, line -> consoleOutput.append(line).append('\n'), consoleOutput::append);
             return getConsoleOutput();
         }
 
-        private long input() {
-            try {
-                return instructions.take();
-            } catch (InterruptedException e) {
-                throw new IllegalStateException(e);
-            }
-        }
-
-        private void output(long c) {
-            if (c < 255) {
-                stringBuilder.append((char) c);
-            } else {
-                stringBuilder.append(c);
-            }
-
-            if (stringBuilder.toString().contains("Command?\n")) {
-                consoleOutput.offer(stringBuilder.toString());
-                stringBuilder.setLength(0);
-            }
+        private void resume(IntcodeMachine machine) {
+            port = new AsciiPort(machine, line -> consoleOutput.append(line).append('\n'), consoleOutput::append);
         }
 
         private Position doCommand(String input) {
-            input.chars().mapToLong(t -> t).forEach(instructions::add);
-            instructions.add(10L);
-
+            port.writeLine(input);
             return getConsoleOutput();
         }
 
         private Position getConsoleOutput() {
-            try {
-                return parseOutput(consoleOutput.take());
-            } catch (InterruptedException e) {
-                throw new IllegalStateException(e);
-            }
+            port.run();
+            String output = consoleOutput.toString();
+            consoleOutput.setLength(0);
+            return parseOutput(output);
         }
 
         public void walk(Position currentPosition, Direction direction, Deque<Direction> path) {
@@ -0,0 +1,34 @@
+package com.adventofcode.intcode;
+
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class AsciiPortTest {
+    // Echoes every input until it reads a zero, then outputs 1000 and "ok" without a trailing newline.
+    private static final String ECHO = "3,100,1006,100,10,4,100,1105,1,0,104,1000,104,111,104,107,99";
+
+    @Test
+    void testLinesAndValues() {
+        List<String> lines = new ArrayList<>();
+        List<Long> values = new ArrayList<>();
+        AsciiPort port = AsciiPort.of(ECHO, lines::add, values::add);
+        port.writeLine("hello").write(ByteBuffer.wrap("world\n".getBytes(StandardCharsets.US_ASCII)));
+        assertThat(port.run()).isEqualTo(IntcodeMachine.State.NEEDS_INPUT);
+        assertThat(lines).containsExactly("hello", "world");
+
+        port.write("x");
+        assertThat(port.run()).isEqualTo(IntcodeMachine.State.NEEDS_INPUT);
+        assertThat(port.pending()).isEqualTo("x");
+
+        port.write(ByteBuffer.wrap(new byte[]{0}));
+        assertThat(port.run()).isEqualTo(IntcodeMachine.State.HALTED);
+        assertThat(values).containsExactly(1000L);
+        assertThat(lines).containsExactly("hello", "world", "xok");
+    }
+}
@@ -0,0 +1,82 @@
+package com.adventofcode.intcode;
+
+import org.testng.annotations.Test;
+
+import java.util.StringJoiner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BlockCompilerTest {
+    /**
+     * Counts the cell at the end of the image down from 300 through a chain of {@code jumps} unconditional jumps, each
+     * one a block of its own, then outputs it.
+     */
+    private static long[] chain(int jumps) {
+        int end = 10 + 3 * jumps;
+        StringJoiner program = new StringJoiner(",");
+        program.add("1001," + (end + 3) + ",-1," + (end + 3));
+        program.add("1006," + (end + 3) + "," + end);
+        for (int i = 0; i < jumps; i++) {
+            program.add("1105,1," + (10 + 3 * i));
+        }
+        program.add("1105,1,0");
+        program.add("4," + (end + 3) + ",99,300");
+        return IntcodeProgram.parse(program.toString()).copy();
+    }
+
+    /**
+     * Adds 1 to the cell at the end of the image {@code instructions} times in a row, 100 times over, then outputs it.
+     */
+    private static long[] straightLine(int instructions) {
+        int end = 4 * instructions + 10;
+        StringJoiner program = new StringJoiner(",");
+        for (int i = 0; i < instructions; i++) {
+            program.add("1001," + (end + 1) + ",1," + (end + 1));
+        }
+        program.add("1001," + end + ",-1," + end);
+        program.add("1005," + end + ",0");
+        program.add("4," + (end + 1) + ",99,100,0");
+        return IntcodeProgram.parse(program.toString()).copy();
+    }
+
+    @Test
+    void testDispatchMethodsStayCompilable() {
+        // Class files refuse methods over the huge method limit.
+        assertThat(BlockCompiler.generate(new Memory(chain(1_000)), new int[]{0})).isNotNull();
+    }
+
+    @Test
+    void testBlockMethodsStayCompilable() {
+        // Less-than on relative parameters, the longest instruction to compile.
+        StringJoiner program = new StringJoiner(",");
+        for (int i = 0; i < 1_000; i++) {
+            program.add("22207,100000,100000,100000");
+        }
+        assertThat(BlockCompiler.generate(new Memory(IntcodeProgram.parse(program.toString()).copy()), new int[]{0}))
+                .isNotNull();
+    }
+
+    @Test
+    void testLongBlocksAreSplit() {
+        for (int instructions : new int[]{500, 2_000}) {
+            IntcodeMachine machine = new IntcodeMachine(straightLine(instructions));
+            machine.setCompileThreshold(1_000);
+            assertThat(machine.run()).isEqualTo(IntcodeMachine.State.OUTPUT);
+            assertThat(machine.getOutput()).isEqualTo(100L * instructions);
+            assertThat(machine.isCompiled()).isTrue();
+            assertThat(machine.run()).isEqualTo(IntcodeMachine.State.HALTED);
+        }
+    }
+
+    @Test
+    void testChunkedDispatch() {
+        // Over three dispatch methods, every jump crossing from one to the next.
+        long[] program = chain(3 * BlockCompiler.CASES_PER_METHOD);
+        assertThat(BlockCompiler.compile(new Memory(program.clone()), new int[]{0})).isNotNull();
+        IntcodeMachine machine = new IntcodeMachine(program);
+        machine.setCompileThreshold(100);
+        assertThat(machine.run()).isEqualTo(IntcodeMachine.State.OUTPUT);
+        assertThat(machine.getOutput()).isEqualTo(0);
+        assertThat(machine.run()).isEqualTo(IntcodeMachine.State.HALTED);
+    }
+}
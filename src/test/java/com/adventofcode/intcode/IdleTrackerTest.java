@@ -0,0 +1,46 @@
+package com.adventofcode.intcode;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IdleTrackerTest {
+    @Test
+    void testIdleOnlyWhenEveryPartyIs() throws InterruptedException {
+        IdleTracker tracker = new IdleTracker(3);
+        tracker.idle(0);
+        tracker.idle(1);
+        tracker.idle(1);
+        assertThat(tracker.isIdle()).isFalse();
+        assertThat(tracker.awaitIdle(10, TimeUnit.MILLISECONDS)).isFalse();
+
+        tracker.idle(2);
+        assertThat(tracker.isIdle()).isTrue();
+        tracker.busy(1);
+        assertThat(tracker.isIdle()).isFalse();
+    }
+
+    @Test
+    void testWakesWaiterOnLastIdle() throws InterruptedException {
+        IdleTracker tracker = new IdleTracker(2);
+        tracker.idle(0);
+        CountDownLatch woken = new CountDownLatch(1);
+        Thread waiter = new Thread(() -> {
+            try {
+                tracker.awaitIdle();
+                woken.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        waiter.start();
+        assertThat(woken.await(50, TimeUnit.MILLISECONDS)).isFalse();
+
+        tracker.idle(1);
+        assertThat(woken.await(5, TimeUnit.SECONDS)).isTrue();
+        waiter.join();
+    }
+}
@@ -0,0 +1,54 @@
+package com.adventofcode.intcode;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IntcodeBatchTest {
+    // Reads n and outputs n, n - 1, ..., 1: lanes with different inputs loop a different number of times.
+    private static final IntcodeProgram COUNTDOWN = IntcodeProgram.parse("3,12,4,12,1001,12,-1,12,1005,12,2,99,0");
+
+    @Test
+    void testDivergentLanes() {
+        IntcodeBatch batch = new IntcodeBatch(COUNTDOWN, new long[][]{{3}, {1}, {5}});
+        long[][] outputs = batch.run();
+        assertThat(outputs[0]).containsExactly(3, 2, 1);
+        assertThat(outputs[1]).containsExactly(1);
+        assertThat(outputs[2]).containsExactly(5, 4, 3, 2, 1);
+        // The lanes share their steps as long as they loop together: 1 + 3 * 5 + 3 halts instead of 33 for separate runs.
+        assertThat(batch.getSteps()).isEqualTo(19);
+        assertThat(batch.getSplitOff()).isZero();
+    }
+
+    @Test
+    void testSplitOffLoneLanes() {
+        IntcodeBatch batch = new IntcodeBatch(COUNTDOWN, new long[][]{{2}, {1_000}, {3}});
+        long[][] outputs = batch.run();
+        assertThat(outputs[0]).containsExactly(2, 1);
+        assertThat(outputs[1]).hasSize(1_000).startsWith(1_000, 999).endsWith(2, 1);
+        assertThat(outputs[2]).containsExactly(3, 2, 1);
+        // The long lane leaves the batch once it has looped alone for a while.
+        assertThat(batch.getSplitOff()).isEqualTo(1);
+        assertThat(batch.getSteps()).isLessThan(10 + IntcodeBatch.SOLO_STEPS + 3);
+    }
+
+    @Test
+    void testParallelBatches() {
+        long[][] inputs = new long[100][];
+        for (int i = 0; i < inputs.length; i++) {
+            inputs[i] = new long[]{i % 7 + 1};
+        }
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            long[][] outputs = IntcodeBatch.run(COUNTDOWN, inputs, executorService, 16);
+            for (int i = 0; i < inputs.length; i++) {
+                assertThat(outputs[i]).hasSize(i % 7 + 1).startsWith(i % 7 + 1);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.adventofcode.intcode;
+
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class IntcodeCheckpointTest {
+    @Test
+    void testSaveAndLoad() throws IOException {
+        Path file = Files.createTempFile("intcode", ".checkpoint");
+        try {
+            IntcodeMachine machine = new IntcodeMachine(TestPrograms.TOTAL);
+            machine.input(40);
+            machine.input(2);
+            assertThat(machine.run()).isEqualTo(IntcodeMachine.State.OUTPUT);
+            IntcodeCheckpoint.save(machine, file);
+
+            // The loaded machine resumes with the pending input and the paged total, as the saved one does.
+            for (IntcodeMachine resumed : new IntcodeMachine[]{IntcodeCheckpoint.load(file), IntcodeCheckpoint.load(file), machine}) {
+                assertThat(resumed.getOutput()).isEqualTo(40);
+                assertThat(resumed.getMemory().size()).isEqualTo(2_000_000_001L);
+                assertThat(resumed.getMemory().pageCount()).isEqualTo(1);
+                assertThat(resumed.run()).isEqualTo(IntcodeMachine.State.OUTPUT);
+                assertThat(resumed.getOutput()).isEqualTo(42);
+                assertThat(resumed.run()).isEqualTo(IntcodeMachine.State.NEEDS_INPUT);
+                resumed.input(0);
+                assertThat(resumed.run()).isEqualTo(IntcodeMachine.State.HALTED);
+            }
+
+            // A halted machine stays halted.
+            IntcodeCheckpoint.save(machine, file);
+            assertThat(IntcodeCheckpoint.load(file).run()).isEqualTo(IntcodeMachine.State.HALTED);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testSaveReplacesFile() throws IOException {
+        Path directory = Files.createTempDirectory("intcode");
+        Path file = directory.resolve("droid.checkpoint");
+        try {
+            IntcodeMachine machine = new IntcodeMachine(TestPrograms.TOTAL);
+            IntcodeCheckpoint.save(machine, file);
+            IntcodeMachine loaded = IntcodeCheckpoint.load(file);
+            machine.input(0);
+            assertThat(machine.run()).isEqualTo(IntcodeMachine.State.HALTED);
+            IntcodeCheckpoint.save(machine, file);
+
+            // The machine loaded before keeps running on its own copy, and no temporary file is left behind.
+            assertThat(loaded.run()).isEqualTo(IntcodeMachine.State.NEEDS_INPUT);
+            assertThat(IntcodeCheckpoint.load(file).run()).isEqualTo(IntcodeMachine.State.HALTED);
+            try (Stream<Path> files = Files.list(directory)) {
+                assertThat(files).containsExactly(file);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void testRejectsOtherFiles() throws IOException {
+        Path file = Files.createTempFile("intcode", ".checkpoint");
+        try {
+            Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+            assertThatThrownBy(() -> IntcodeCheckpoint.load(file)).isInstanceOf(IOException.class);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void testRejectsCorruptCheckpoints() throws IOException {
+        Path file = Files.createTempFile("intcode", ".checkpoint");
+        try {
+            // Headers matching the file length, followed by: a memory cut short, a count of pending inputs past the
+            // end, and a valid machine followed by one more long.
+            long[][] bodies = {{0, 0, 0, 0, 0, 10, 3, 1, 2}, {0, 0, 0, 0, 1L << 40, 0, 0, 0}, {0, 0, 0, 0, 0, 0, 0, 0, 7}};
+            for (long[] body : bodies) {
+                ByteBuffer bytes = ByteBuffer.allocate(16 + 8 * body.length).order(ByteOrder.LITTLE_ENDIAN);
+                bytes.putInt(0x49434350).putInt(1).putLong(body.length);
+                bytes.asLongBuffer().put(body);
+                Files.write(file, bytes.array());
+                assertThatThrownBy(() -> IntcodeCheckpoint.load(file)).isInstanceOf(IOException.class)
+                        .hasMessageStartingWith("corrupt checkpoint");
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+}
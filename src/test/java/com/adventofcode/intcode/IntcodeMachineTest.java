@@ -0,0 +1,204 @@
+package com.adventofcode.intcode;
+
+import com.adventofcode.utils.FileUtils;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class IntcodeMachineTest {
+    // Decrements address 8 and jumps back to 0 until it reaches zero: two instructions per iteration.
+    private static final String COUNTDOWN = "1001,8,-1,8,1005,8,0,99,";
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    @Test
+    void testSelfModifyingInstruction() {
+        // The first run of address 0 outputs 1, then the program rewrites address 0 into a halt and jumps back to it.
+        List<Long> output = new ArrayList<>();
+        long[] memory = new IntcodeMachine(IntcodeProgram.parse("104,1,1101,0,99,0,1105,1,0").copy()).run(() -> 0, output::add);
+        assertThat(output).containsExactly(1L);
+        assertThat(memory[0]).isEqualTo(99);
+    }
+
+    @Test
+    void testDispatchDoesNotAllocate() {
+        IntcodeProgram warmUp = IntcodeProgram.parse(COUNTDOWN + 100_000);
+        for (int i = 0; i < 20; i++) {
+            IntcodeMachine machine = new IntcodeMachine(warmUp.copy());
+            machine.setCompileThreshold(0);
+            machine.run(() -> 0, n -> {
+            });
+        }
+
+        int millions = 10;
+        IntcodeMachine machine = new IntcodeMachine(IntcodeProgram.parse(COUNTDOWN + millions * 500_000).copy());
+        machine.setCompileThreshold(0);
+        long before = allocatedBytes();
+        machine.run(() -> 0, n -> {
+        });
+        long allocated = allocatedBytes() - before;
+
+        // What remains is a fixed cost (final memory dump, runtime bookkeeping), not a per-instruction one.
+        assertThat(allocated / millions).isLessThan(4096);
+    }
+
+    private static List<Long> run(String program, int compileThreshold, long input) {
+        List<Long> output = new ArrayList<>();
+        IntcodeMachine machine = new IntcodeMachine(IntcodeProgram.parse(program).copy());
+        machine.setCompileThreshold(compileThreshold);
+        machine.run(() -> input, output::add);
+        return output;
+    }
+
+    @Test
+    void testCompiledMatchesInterpreter() throws IOException {
+        String line = FileUtils.readLine("/day/9/input");
+        assertThat(run(line, 1_000, 2)).isEqualTo(run(line, 0, 2)).containsExactly(72852L);
+    }
+
+    @Test
+    void testCompiledSelfModifyingLoop() {
+        // The loop decrements the immediate parameter of its own first instruction until it reaches zero.
+        String program = "1101,100000,-1,1,1005,1,0,4,1,99";
+        assertThat(run(program, 1_000, 0)).containsExactly(0L);
+    }
+
+    @Test
+    void testFarAddressesUsePages() {
+        // Moves the relative base to 10^12, stores 40 + 2 there and outputs it back.
+        String program = "109,1000000000000,21101,40,2,0,204,0,99";
+        IntcodeMachine machine = new IntcodeMachine(IntcodeProgram.parse(program).copy());
+        assertThat(machine.run()).isEqualTo(IntcodeMachine.State.OUTPUT);
+        assertThat(machine.getOutput()).isEqualTo(42L);
+        assertThat(machine.getMemory().size()).isEqualTo(1_000_000_000_001L);
+        assertThat(machine.getMemory().pageCount()).isEqualTo(1);
+    }
+
+    @Test
+    void testPagesAreCopiedOnWrite() {
+        Memory memory = new Memory(new long[]{1, 2, 3});
+        memory.write(5_000_000L, 7);
+        Memory fork = memory.fork();
+        fork.write(5_000_000L, 8);
+        memory.write(5_000_001L, 9);
+        assertThat(memory.read(5_000_000L)).isEqualTo(7L);
+        assertThat(fork.read(5_000_000L)).isEqualTo(8L);
+        assertThat(fork.read(5_000_001L)).isZero();
+
+        // Growing the array one cell at a time eventually folds the page back into it.
+        for (long address = 3; address < 5_000_000L; address++) {
+            memory.write(address, 0);
+        }
+        assertThat(memory.pageCount()).isZero();
+        long[] cells = memory.toArray();
+        assertThat(cells).hasSize(5_000_002);
+        assertThat(cells[5_000_000]).isEqualTo(7L);
+        assertThat(cells[5_000_001]).isEqualTo(9L);
+    }
+
+    private static int pausesUntilHalt(int compileThreshold) {
+        IntcodeMachine machine = new IntcodeMachine(IntcodeProgram.parse(COUNTDOWN + 100_000).copy());
+        machine.setCompileThreshold(compileThreshold);
+        int pauses = 0;
+        while (machine.run(1_000, 1, TimeUnit.MINUTES) == IntcodeMachine.State.PAUSED) {
+            pauses++;
+        }
+        return pauses;
+    }
+
+    @Test
+    void testInstructionBudget() {
+        // 200,001 instructions: two per iteration plus the halt, the compiled tier must account for them exactly.
+        assertThat(pausesUntilHalt(0)).isEqualTo(200);
+        assertThat(pausesUntilHalt(1_000)).isEqualTo(200);
+    }
+
+    @Test
+    void testInstructionBudgetWithSelfModifyingBlock() {
+        // Rewrites an operand of its own loop every iteration: 1,000 iterations of three instructions plus the halt.
+        // Compiled blocks exit right after the write and must only be charged for the instructions they ran.
+        for (int compileThreshold : new int[]{0, 10}) {
+            IntcodeMachine machine = new IntcodeMachine(IntcodeProgram.parse("1001,12,-1,12,1101,5,0,5,1005,12,0,99,1000").copy());
+            machine.setCompileThreshold(compileThreshold);
+            assertThat(machine.run(3_000, 1, TimeUnit.MINUTES)).isEqualTo(IntcodeMachine.State.PAUSED);
+            assertThat(machine.run(1, 1, TimeUnit.MINUTES)).isEqualTo(IntcodeMachine.State.HALTED);
+        }
+    }
+
+    @Test
+    void testConcurrentRestore() throws Exception {
+        IntcodeMachine machine = new IntcodeMachine(IntcodeProgram.parse(COUNTDOWN + 1_000).copy());
+        IntcodeMachine.Snapshot snapshot = machine.snapshot();
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Long>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                futures.add(executorService.submit(() -> {
+                    IntcodeMachine restored = snapshot.restore();
+                    assertThat(restored.run()).isEqualTo(IntcodeMachine.State.HALTED);
+                    return restored.getMemory().read(8);
+                }));
+            }
+            for (Future<Long> future : futures) {
+                assertThat(future.get()).isEqualTo(0);
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+        assertThat(snapshot.restore().getMemory().read(8)).isEqualTo(1_000);
+    }
+
+    @Test
+    void testNegativeBudget() {
+        IntcodeMachine machine = new IntcodeMachine(IntcodeProgram.parse("1105,1,0").copy());
+        assertThatThrownBy(() -> machine.run(-1, 1, TimeUnit.MINUTES)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void testLoweredCompileThreshold() {
+        IntcodeMachine machine = new IntcodeMachine(IntcodeProgram.parse(COUNTDOWN + 100_000).copy());
+        assertThat(machine.run(1_000, 1, TimeUnit.MINUTES)).isEqualTo(IntcodeMachine.State.PAUSED);
+        assertThat(machine.isCompiled()).isFalse();
+        // Already past the new threshold: the next instruction compiles.
+        machine.setCompileThreshold(100);
+        assertThat(machine.run(1, 1, TimeUnit.MINUTES)).isEqualTo(IntcodeMachine.State.PAUSED);
+        assertThat(machine.isCompiled()).isTrue();
+        assertThat(machine.run()).isEqualTo(IntcodeMachine.State.HALTED);
+    }
+
+    @Test
+    void testJumpOutOfRange() {
+        // Counts cell 10 down from 50,000, then jumps to an address no instruction pointer can hold.
+        for (long target : new long[]{-1, 1L << 32}) {
+            for (int compileThreshold : new int[]{0, 1_000}) {
+                IntcodeMachine machine = new IntcodeMachine(IntcodeProgram.parse("1001,10,-1,10,1005,10,0,1105,1,"
+                        + target + ",50000").copy());
+                machine.setCompileThreshold(compileThreshold);
+                assertThatThrownBy(() -> machine.run(1_000_000, 1, TimeUnit.MINUTES))
+                        .isInstanceOf(IllegalStateException.class).hasMessage("jump(" + target + ")");
+            }
+        }
+    }
+
+    @Test
+    void testDeadline() {
+        IntcodeMachine machine = new IntcodeMachine(IntcodeProgram.parse("1105,1,0").copy());
+        long start = System.nanoTime();
+        assertThat(machine.run(Long.MAX_VALUE, 50, TimeUnit.MILLISECONDS)).isEqualTo(IntcodeMachine.State.PAUSED);
+        assertThat(System.nanoTime() - start).isLessThan(TimeUnit.SECONDS.toNanos(5));
+        assertThat(machine.isHalted()).isFalse();
+    }
+}
@@ -0,0 +1,44 @@
+package com.adventofcode.intcode;
+
+import org.testng.annotations.Test;
+
+import java.util.StringJoiner;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class IntcodeNetworkTest {
+    // Node 0 sends (7, 0) to node 1, every node relays the packets it gets to the next address with Y + 1.
+    private static final IntcodeProgram RELAY = IntcodeProgram.parse("3,100,1005,100,11,104,1,104,7,104,0,"
+            + "3,101,1008,101,-1,103,1005,103,11,3,102,101,1,100,104,4,104,4,101,101,1,102,105,4,105,1105,1,11");
+
+    @Test
+    void testRelayToNat() {
+        // Node 254 relays to the NAT, the nodes above it only ever read -1.
+        IntcodeNetwork network = new IntcodeNetwork(RELAY, 2_000);
+        assertThat(network.runUntilNat()).isEqualTo(new Packet(IntcodeNetwork.NAT, 7, 254));
+        assertThat(network.getPackets()).isEqualTo(255);
+        // Packets only go up the addresses, so they are all read in the round they are sent.
+        assertThat(network.getRounds()).isEqualTo(1);
+    }
+
+    @Test
+    void testHalfSentPacketKeepsNetworkBusy() {
+        // Sends (0, 1), (0, 2) and (0, 3) to the NAT one value per round, reading an input before each, then only reads.
+        StringJoiner program = new StringJoiner(",");
+        program.add("3,100,3,101,4,102,3,101,4,103,3,101,4,104,1001,104,1,104,1001,105,-1,105,1005,105,2,3,101,1105,1,25");
+        for (int address = 30; address < 102; address++) {
+            program.add("0");
+        }
+        program.add("255,0,1,3");
+        IntcodeNetwork network = new IntcodeNetwork(IntcodeProgram.parse(program.toString()), 1);
+        assertThat(network.runNat()).isEqualTo(3);
+    }
+
+    @Test
+    void testIdleWithoutNatPacket() {
+        // Node 99 relays to an address nobody has, then the network goes idle with nothing for the NAT.
+        assertThatThrownBy(() -> new IntcodeNetwork(RELAY, 100).runUntilNat()).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> new IntcodeNetwork(RELAY, 100).runNat()).isInstanceOf(IllegalStateException.class);
+    }
+}
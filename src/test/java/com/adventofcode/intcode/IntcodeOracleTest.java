@@ -0,0 +1,37 @@
+package com.adventofcode.intcode;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class IntcodeOracleTest {
+    // Reads two values and outputs their sum.
+    private static final IntcodeProgram SUM = IntcodeProgram.parse("3,11,3,12,1,11,12,13,4,13,99,0,0,0");
+
+    @Test
+    void testMemoizedQueries() {
+        IntcodeOracle oracle = new IntcodeOracle(SUM, 2);
+        assertThat(oracle.first(1, 2)).isEqualTo(3);
+        assertThat(oracle.first(1, 2)).isEqualTo(3);
+        assertThat(oracle.first(40, 2)).isEqualTo(42);
+        assertThat(oracle.getHits()).isEqualTo(1);
+        assertThat(oracle.getMisses()).isEqualTo(2);
+
+        // A single set of two ways: a third key evicts the least recently used one, (1, 2).
+        oracle.first(40, 2);
+        oracle.first(5, 5);
+        assertThat(oracle.getEvictions()).isEqualTo(1);
+        oracle.first(40, 2);
+        assertThat(oracle.getHits()).isEqualTo(3);
+        oracle.first(1, 2);
+        assertThat(oracle.getMisses()).isEqualTo(4);
+    }
+
+    @Test
+    void testRejectsNonQueryPrograms() {
+        assertThatThrownBy(() -> new IntcodeOracle(SUM, 16).query(1)).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(() -> new IntcodeOracle(IntcodeProgram.parse("1105,1,0"), 16, 1_000).query())
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
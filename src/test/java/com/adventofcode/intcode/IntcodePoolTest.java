@@ -0,0 +1,68 @@
+package com.adventofcode.intcode;
+
+import org.testng.annotations.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IntcodePoolTest {
+    // Stores its input n past the end of the image, 2n far away in paged memory and outputs it, outputs cell 22
+    // before setting it to 7, then counts n down to 0 in a loop hot enough to get compiled.
+    private static final IntcodeProgram PROGRAM = IntcodeProgram.parse(
+            "3,1000,1,1000,1000,2000000000,4,2000000000,4,22,1101,7,0,22,1001,1000,-1,1000,1005,1000,14,99,0");
+
+    @Test
+    void testResetRestoresImage() {
+        IntcodeMachine machine = new IntcodeMachine(PROGRAM);
+        for (long input = 100_000; input < 100_003; input++) {
+            assertThat(TestPrograms.runToHalt(machine, input)).containsExactly(2 * input, 0);
+            machine.reset(PROGRAM);
+            assertThat(machine.getMemory().size()).isEqualTo(PROGRAM.size());
+            assertThat(machine.getMemory().read(22)).isEqualTo(0);
+            assertThat(machine.getMemory().read(1000)).isEqualTo(0);
+            assertThat(machine.getMemory().read(2_000_000_000L)).isEqualTo(0);
+        }
+
+        // Another image replaces the whole memory.
+        IntcodeProgram other = IntcodeProgram.parse("4,3,99,42");
+        machine.reset(other);
+        assertThat(TestPrograms.runToHalt(machine, 0)).containsExactly(42);
+        machine.reset(PROGRAM);
+        assertThat(TestPrograms.runToHalt(machine, 5)).containsExactly(10, 0);
+    }
+
+    @Test
+    void testResetKeepsCompileThreshold() {
+        IntcodeProgram other = IntcodeProgram.parse("4,3,99,42");
+        for (int compileThreshold : new int[]{0, 1_000}) {
+            IntcodeMachine machine = new IntcodeMachine(PROGRAM);
+            machine.setCompileThreshold(compileThreshold);
+            machine.reset(other);
+            machine.reset(PROGRAM);
+            assertThat(TestPrograms.runToHalt(machine, 100_000)).containsExactly(200_000, 0);
+            assertThat(machine.isCompiled()).isEqualTo(compileThreshold != 0);
+        }
+    }
+
+    @Test
+    void testReusesMachines() {
+        IntcodePool pool = new IntcodePool(1);
+        for (long input = 1; input <= 3; input++) {
+            IntcodeMachine machine = pool.acquire(PROGRAM);
+            assertThat(TestPrograms.runToHalt(machine, input)).containsExactly(2 * input, 0);
+            pool.release(PROGRAM, machine);
+        }
+        assertThat(pool.getCreated()).isEqualTo(1);
+        assertThat(pool.getReused()).isEqualTo(2);
+
+        // A machine released half way through its run comes back reset, and only one is kept.
+        IntcodeMachine first = pool.acquire(PROGRAM);
+        IntcodeMachine second = pool.acquire(PROGRAM);
+        first.input(4);
+        assertThat(first.run()).isEqualTo(IntcodeMachine.State.OUTPUT);
+        pool.release(PROGRAM, first);
+        pool.release(PROGRAM, second);
+        assertThat(pool.acquire(PROGRAM)).isSameAs(first);
+        assertThat(TestPrograms.runToHalt(first, 6)).containsExactly(12, 0);
+        assertThat(pool.getCreated()).isEqualTo(2);
+    }
+}
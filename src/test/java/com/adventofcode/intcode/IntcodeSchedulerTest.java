@@ -0,0 +1,42 @@
+package com.adventofcode.intcode;
+
+import org.testng.annotations.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IntcodeSchedulerTest {
+    @Test
+    void testChainOfMachines() {
+        // Reads a value, outputs it plus one and halts.
+        IntcodeProgram increment = IntcodeProgram.parse("3,9,1001,9,1,9,4,9,99,0");
+        IntcodeScheduler scheduler = new IntcodeScheduler();
+        AtomicLong result = new AtomicLong();
+
+        IntcodeScheduler.Task next = null;
+        for (int i = 0; i < 5_000; i++) {
+            IntcodeScheduler.Task target = next;
+            next = scheduler.spawn(new IntcodeMachine(increment.copy()), target != null ? target::send : result::set);
+        }
+        next.send(0);
+        scheduler.run();
+
+        assertThat(result).hasValue(5_000);
+    }
+
+    @Test
+    void testWaitingMachine() {
+        IntcodeScheduler scheduler = new IntcodeScheduler();
+        IntcodeScheduler.Task task = scheduler.spawn(new IntcodeMachine(IntcodeProgram.parse("3,9,1001,9,1,9,4,9,99,0").copy()), n -> {
+        });
+        scheduler.run();
+        assertThat(task.isHalted()).isFalse();
+        assertThat(task.getMachine().run()).isEqualTo(IntcodeMachine.State.NEEDS_INPUT);
+
+        task.send(41);
+        assertThat(task.getMachine().run()).isEqualTo(IntcodeMachine.State.OUTPUT);
+        assertThat(task.getMachine().getOutput()).isEqualTo(42);
+        assertThat(task.getMachine().run()).isEqualTo(IntcodeMachine.State.HALTED);
+    }
+}
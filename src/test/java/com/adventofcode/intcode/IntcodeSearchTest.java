@@ -0,0 +1,83 @@
+package com.adventofcode.intcode;
+
+import org.testng.annotations.Test;
+
+import java.util.StringJoiner;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IntcodeSearchTest {
+    // Stores (cell 9 + cell 10) * cell 11 into cell 0.
+    private static final IntcodeProgram PROGRAM = IntcodeProgram.parse("1,9,10,0,2,0,11,0,99,0,0,0");
+
+    @Test
+    void testFirstMatchInOrder() {
+        IntcodeSearch search = new IntcodeSearch(PROGRAM, 9, 10, 11);
+        // 12 = (a + b) * c: (0, 2, 6) comes first in lexicographic order.
+        assertThat(search.find(12, 10, 10, 10)).hasValueSatisfying(values -> assertThat(values).containsExactly(0, 2, 6));
+        assertThat(search.find(1000, 10, 10, 10)).isEmpty();
+    }
+
+    @Test
+    void testParallelMatchesSerial() {
+        IntcodeSearch search = new IntcodeSearch(PROGRAM, 9, 10, 11);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            long[] bounds = {50, 50, 50};
+            for (long target : new long[]{0, 12, 97, 4802}) {
+                assertThat(search.find(target, bounds, executorService, 7).map(v -> v[0] * 2500 + v[1] * 50 + v[2]))
+                        .isEqualTo(search.find(target, bounds).map(v -> v[0] * 2500 + v[1] * 50 + v[2]));
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void testClosedForm() {
+        // Like Day 2: the first instruction reads through the noun and verb, the second overwrites its result.
+        IntcodeProgram program = IntcodeProgram.parse("1,0,0,3,1,1,2,3,2,3,13,0,99,5");
+        IntcodeSearch search = IntcodeSearch.closedForm(program, 1, 2);
+        assertThat(search.getClosedForm()).hasValueSatisfying(form -> assertThat(form.toString()).isEqualTo("0 + 5 * x0 + 5 * x1"));
+        assertThat(search.find(35, 10, 10)).hasValueSatisfying(values -> assertThat(values).containsExactly(0, 7));
+        assertThat(search.find(36, 10, 10)).isEmpty();
+
+        // The machines find the same first match.
+        IntcodeSearch concrete = new IntcodeSearch(program, 1, 2);
+        assertThat(concrete.find(35, 10, 10)).hasValueSatisfying(values -> assertThat(values).containsExactly(0, 7));
+        assertThat(concrete.find(36, 10, 10)).isEmpty();
+        assertThat(new IntcodeSearch(PROGRAM, 9, 10, 11).getClosedForm()).isEmpty();
+    }
+
+    @Test
+    void testLongStraightLineLoop() {
+        // Adds 1 to cell 8016 two thousand times in a row, as many times over as cell 8015 says, then copies it to
+        // cell 0. Candidates from 10 on run long enough to compile the loop, a straight line of 2000 instructions.
+        StringJoiner program = new StringJoiner(",");
+        program.add("1105,1,3");
+        for (int i = 0; i < 2_000; i++) {
+            program.add("1001,8016,1,8016");
+        }
+        program.add("1001,8015,-1,8015,1005,8015,3,1001,8016,0,0,99,0,0");
+        IntcodeSearch search = new IntcodeSearch(IntcodeProgram.parse(program.toString()), 8015);
+        assertThat(search.find(100_000, 60)).hasValueSatisfying(values -> assertThat(values).containsExactly(50));
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            assertThat(search.find(100_000, new long[]{60}, executorService, 4))
+                    .hasValueSatisfying(values -> assertThat(values).containsExactly(50));
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    @Test
+    void testFailingRunsAreNoMatch() {
+        // Opcode 0 is invalid, opcode 1 then runs the program as usual.
+        assertThat(new IntcodeSearch(PROGRAM, 0).find(0, 200)).hasValueSatisfying(values -> assertThat(values).containsExactly(1));
+        // Jumps back to itself while cell 1 is 0, falls through to the halt otherwise.
+        IntcodeSearch loop = new IntcodeSearch(IntcodeProgram.parse("1106,0,0,99"), new int[]{1}, 1_000);
+        assertThat(loop.find(1106, 2)).hasValueSatisfying(values -> assertThat(values).containsExactly(1));
+    }
+}
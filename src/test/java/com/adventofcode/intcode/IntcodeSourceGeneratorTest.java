@@ -0,0 +1,57 @@
+package com.adventofcode.intcode;
+
+import com.adventofcode.utils.FileUtils;
+import org.testng.annotations.Test;
+
+import javax.tools.ToolProvider;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class IntcodeSourceGeneratorTest {
+    private static PrecompiledBlocks compile(String className, IntcodeProgram program) throws IOException, ReflectiveOperationException {
+        Path directory = Files.createTempDirectory("intcode-aot");
+        Path source = directory.resolve(className + ".java");
+        Files.write(source, IntcodeSourceGenerator.generate(className, program).getBytes(StandardCharsets.UTF_8));
+        int status = ToolProvider.getSystemJavaCompiler().run(null, null, null,
+                "-d", directory.toString(), "-cp", System.getProperty("java.class.path"), source.toString());
+        assertThat(status).isZero();
+        byte[] bytes = Files.readAllBytes(directory.resolve("com/adventofcode/intcode/" + className + ".class"));
+        Class<?> type = MethodHandles.lookup().defineClass(bytes);
+        return (PrecompiledBlocks) type.getDeclaredConstructor().newInstance();
+    }
+
+    @Test
+    void testBoost() throws IOException, ReflectiveOperationException {
+        IntcodeProgram program = IntcodeProgram.parse(FileUtils.readLine("/day/9/input"));
+        PrecompiledBlocks blocks = compile("BoostBlocks", program);
+
+        IntcodeMachine machine = new IntcodeMachine(program.copy());
+        machine.setCompileThreshold(0);
+        assertThat(machine.usePrecompiled(blocks)).isTrue();
+        assertThat(TestPrograms.runToHalt(machine, 2)).containsExactly(72852L);
+
+        IntcodeMachine other = new IntcodeMachine(IntcodeProgram.parse(FileUtils.readLine("/day/5/input")).copy());
+        assertThat(other.usePrecompiled(blocks)).isFalse();
+    }
+
+    @Test
+    void testSelfModifyingCode() throws IOException, ReflectiveOperationException {
+        // Writes 7 through the relative base into a parameter of the next add, which then stores 0 + 7 for the output.
+        IntcodeProgram program = IntcodeProgram.parse("109,8,21101,7,0,0,1101,0,0,15,4,15,99,0,0,0");
+        IntcodeMachine machine = new IntcodeMachine(program.copy());
+        assertThat(machine.usePrecompiled(compile("SelfModifyingBlocks", program))).isTrue();
+        assertThat(TestPrograms.runToHalt(machine)).containsExactly(7L);
+    }
+
+    @Test
+    void testIndex() {
+        assertThat(IntcodeSourceGenerator.generateIndex(Collections.singletonList("Day09Blocks")))
+                .contains("static final PrecompiledBlocks[] BLOCKS = {new Day09Blocks()};");
+    }
+}
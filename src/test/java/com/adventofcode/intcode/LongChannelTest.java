@@ -0,0 +1,76 @@
+package com.adventofcode.intcode;
+
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LongChannelTest {
+    private static final int COUNT = 1_000_000;
+
+    @Test
+    void testSingleProducer() {
+        LongChannel channel = new SpscLongChannel(64);
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            executor.submit(() -> LongStream.range(0, COUNT).forEach(channel::put));
+            long previous = -1;
+            for (int i = 0; i < COUNT; i++) {
+                long value = channel.take();
+                assertThat(value).isEqualTo(previous + 1);
+                previous = value;
+            }
+            assertThat(channel.poll(-1)).isEqualTo(-1);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testMultipleProducers() throws Exception {
+        int producers = 4;
+        LongChannel channel = new MpscLongChannel(64);
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                futures.add(executor.submit(() -> LongStream.rangeClosed(1, COUNT / producers).forEach(channel::put)));
+            }
+            long sum = 0;
+            for (int i = 0; i < COUNT; i++) {
+                sum += channel.take();
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+            long perProducer = COUNT / producers;
+            assertThat(sum).isEqualTo(producers * perProducer * (perProducer + 1) / 2);
+            assertThat(channel.isEmpty()).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testIntcodePipe() throws Exception {
+        // Two machines on two threads: the first doubles its input, the second adds one.
+        LongChannel input = new SpscLongChannel(4);
+        LongChannel pipe = new SpscLongChannel(4);
+        LongChannel output = new SpscLongChannel(4);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            executor.submit(() -> new IntcodeMachine(IntcodeProgram.parse("3,9,1002,9,2,9,4,9,99,0").copy()).run(input, pipe));
+            executor.submit(() -> new IntcodeMachine(IntcodeProgram.parse("3,9,1001,9,1,9,4,9,99,0").copy()).run(pipe, output));
+            input.put(20);
+            assertThat(output.take()).isEqualTo(41);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
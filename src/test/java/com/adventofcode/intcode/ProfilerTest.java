@@ -0,0 +1,76 @@
+package com.adventofcode.intcode;
+
+import com.adventofcode.utils.FileUtils;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProfilerTest {
+    @Test
+    void testCountdownProfile() {
+        // Decrements address 8 from 1000 down to zero: the jump at address 4 is taken 999 times out of 1000.
+        IntcodeMachine machine = new IntcodeMachine(IntcodeProgram.parse("1001,8,-1,8,1005,8,0,99,1000").copy());
+        Profiler profiler = new Profiler();
+        machine.setProfiler(profiler);
+        machine.run(() -> 0, n -> {
+        });
+
+        assertThat(profiler.getInstructions()).isEqualTo(2001);
+        assertThat(profiler.getOpcodeCount(1)).isEqualTo(1000);
+        assertThat(profiler.getOpcodeCount(5)).isEqualTo(1000);
+        assertThat(profiler.getOpcodeCount(99)).isEqualTo(1);
+        assertThat(profiler.getTaken(4)).isEqualTo(999);
+        assertThat(profiler.getNotTaken(4)).isEqualTo(1);
+        assertThat(profiler.getTakenRatio(4)).isEqualTo(0.999);
+        assertThat(profiler.getHotAddresses(2)).containsExactly(0, 4);
+        assertThat(profiler.toCsv()).startsWith("type,key,count,taken,not_taken\nsummary,instructions,2001,,\n")
+                .contains("address,4,1000,999,1\n");
+    }
+
+    @Test
+    void testPeakMemoryCountsPages() {
+        IntcodeMachine machine = new IntcodeMachine(TestPrograms.TOTAL);
+        Profiler profiler = new Profiler();
+        machine.setProfiler(profiler);
+        assertThat(TestPrograms.runToHalt(machine, 5, 0)).containsExactly(5);
+
+        // The total lives at address 2,000,000,000, in one page rather than in as many cells.
+        assertThat(machine.getMemory().size()).isEqualTo(2_000_000_001L);
+        assertThat(profiler.getPeakMemory()).isEqualTo(machine.getMemory().allocated()).isLessThan(1 << 12);
+
+        // The last instruction before the pause allocates a page.
+        IntcodeMachine last = new IntcodeMachine(IntcodeProgram.parse("1101,1,1,3000000000,99").copy());
+        Profiler lastProfiler = new Profiler();
+        last.setProfiler(lastProfiler);
+        assertThat(last.run(1, 1, TimeUnit.MINUTES)).isEqualTo(IntcodeMachine.State.PAUSED);
+        assertThat(lastProfiler.getPeakMemory()).isEqualTo(last.getMemory().allocated()).isGreaterThan(1 << 10);
+    }
+
+    @Test
+    void testProfileDay09() throws IOException {
+        IntcodeMachine machine = new IntcodeMachine(IntcodeProgram.parse(FileUtils.readLine("/day/9/input")).copy());
+        Profiler profiler = new Profiler();
+        machine.setProfiler(profiler);
+        List<Long> output = new ArrayList<>();
+        assertThat(machine.run()).isEqualTo(IntcodeMachine.State.NEEDS_INPUT);
+        machine.input(2);
+        while (machine.run() == IntcodeMachine.State.OUTPUT) {
+            output.add(machine.getOutput());
+        }
+        assertThat(output).containsExactly(72852L);
+
+        long total = 0;
+        for (int opcode = 0; opcode < 100; opcode++) {
+            total += profiler.getOpcodeCount(opcode);
+        }
+        assertThat(total).isEqualTo(profiler.getInstructions());
+        assertThat(profiler.getOpcodeCount(3)).isEqualTo(1);
+        assertThat(profiler.getInputWaitNanos()).isPositive();
+        assertThat(profiler.getPeakMemory()).isEqualTo(machine.getMemory().allocated());
+    }
+}
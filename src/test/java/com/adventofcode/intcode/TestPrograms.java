@@ -0,0 +1,31 @@
+package com.adventofcode.intcode;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Programs and helpers shared by the Intcode tests.
+ */
+final class TestPrograms {
+    // Reads values until a zero, adding each one to a running total kept in paged memory and outputting the total.
+    static final IntcodeProgram TOTAL = IntcodeProgram.parse(
+            "3,100,1006,100,15,1,100,2000000000,2000000000,4,2000000000,1105,1,0,0,99");
+
+    private TestPrograms() {
+    }
+
+    /**
+     * Gives the inputs to the machine, runs it until it halts and returns its outputs.
+     */
+    static long[] runToHalt(IntcodeMachine machine, long... inputs) {
+        for (long input : inputs) {
+            machine.input(input);
+        }
+        LongQueue outputs = new LongQueue();
+        IntcodeMachine.State state;
+        while ((state = machine.run()) == IntcodeMachine.State.OUTPUT) {
+            outputs.add(machine.getOutput());
+        }
+        assertThat(state).isEqualTo(IntcodeMachine.State.HALTED);
+        return outputs.toArray();
+    }
+}
@@ -0,0 +1,58 @@
+package com.adventofcode.intcode;
+
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TraceReplayTest {
+    private static TraceReplay record(int checkpointInterval, long... inputs) throws IOException {
+        IntcodeMachine machine = new IntcodeMachine(TestPrograms.TOTAL);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (TraceRecorder recorder = new TraceRecorder(machine, bytes, checkpointInterval)) {
+            for (long input : inputs) {
+                machine.input(input);
+                IntcodeMachine.State state;
+                do {
+                    state = machine.run();
+                } while (state == IntcodeMachine.State.OUTPUT);
+            }
+            assertThat(recorder.getEvents()).isEqualTo(2 * inputs.length - 1);
+        }
+        return TraceReplay.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    void testSeek() throws IOException {
+        TraceReplay replay = record(2, 3, -5, 1L << 40, 7, 0);
+        assertThat(replay.size()).isEqualTo(9);
+        assertThat(replay.getCheckpoints()).isEqualTo(3);
+        assertThat(replay.outputs(0, replay.size())).containsExactly(3, -2, (1L << 40) - 2, (1L << 40) + 5);
+
+        TraceReplay plain = record(0, 3, -5, 1L << 40, 7, 0);
+        assertThat(plain.getCheckpoints()).isEqualTo(1);
+        for (int event = 0; event <= replay.size(); event++) {
+            IntcodeMachine machine = replay.seek(event);
+            IntcodeMachine expected = plain.seek(event);
+            assertThat(machine.getMemory().read(2_000_000_000L)).isEqualTo(expected.getMemory().read(2_000_000_000L));
+            assertThat(machine.getMemory().read(100)).isEqualTo(expected.getMemory().read(100));
+        }
+        assertThat(replay.seek(replay.size()).run()).isEqualTo(IntcodeMachine.State.HALTED);
+
+        // Seeking to an input leaves it pending, the machine resumes with the recorded output.
+        IntcodeMachine machine = replay.seek(5);
+        assertThat(replay.isInput(4)).isTrue();
+        assertThat(machine.run()).isEqualTo(IntcodeMachine.State.OUTPUT);
+        assertThat(machine.getOutput()).isEqualTo(replay.getValue(5));
+    }
+
+    @Test
+    void testRejectsOtherStreams() {
+        assertThatThrownBy(() -> TraceReplay.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5})))
+                .isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,75 @@
+package com.adventofcode.intcode.analysis;
+
+import com.adventofcode.intcode.IntcodeMachine;
+import com.adventofcode.intcode.IntcodeProgram;
+import com.adventofcode.intcode.Profiler;
+import com.adventofcode.utils.FileUtils;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProgramAnalysisTest {
+    @Test
+    void testCountdown() {
+        ProgramAnalysis analysis = ProgramAnalysis.analyze(IntcodeProgram.parse("1001,8,-1,8,1005,8,0,99,1000"));
+        assertThat(analysis.getInstructions()).extracting(Instruction::toString)
+                .containsExactly("0: add [8], -1, [8]", "4: jnz [8], 0", "7: hlt");
+
+        List<BasicBlock> blocks = analysis.getBlocks();
+        assertThat(blocks).extracting(BasicBlock::getStart).containsExactly(0, 7);
+        assertThat(blocks.get(0).getTarget()).isEqualTo(0);
+        assertThat(blocks.get(0).getFallThrough()).isEqualTo(7);
+        assertThat(blocks.get(1).getFallThrough()).isEqualTo(-1);
+
+        assertThat(analysis.getWritableCells().stream()).containsExactly(8);
+        assertThat(analysis.getSelfModifyingCells().isEmpty()).isTrue();
+        assertThat(analysis.getDataRegions()).extracting(DataRegion::toString).containsExactly("data 8..9");
+    }
+
+    @Test
+    void testSelfModifyingProgram() {
+        // Outputs 1, rewrites address 0 into a halt and jumps back to it.
+        ProgramAnalysis analysis = ProgramAnalysis.analyze(IntcodeProgram.parse("104,1,1101,0,99,0,1105,1,0"));
+        assertThat(analysis.getSelfModifyingCells().stream()).containsExactly(0);
+        assertThat(analysis.getBlock(0).getInstructions()).hasSize(3);
+        assertThat(analysis.getBlock(0).getTarget()).isZero();
+    }
+
+    @Test
+    void testCoversExecutedCode() throws IOException {
+        // Day 25 reads "north\n" over and over, it is only run for a while.
+        String[] days = {"9", "19", "25"};
+        long[][] inputs = {{2}, {0, 0}, {110, 111, 114, 116, 104, 10}};
+        for (int i = 0; i < days.length; i++) {
+            String day = days[i];
+            IntcodeProgram program = IntcodeProgram.parse(FileUtils.readLine("/day/" + day + "/input"));
+            ProgramAnalysis analysis = ProgramAnalysis.analyze(program);
+
+            IntcodeMachine machine = new IntcodeMachine(program.copy());
+            Profiler profiler = new Profiler();
+            machine.setProfiler(profiler);
+            long[] input = inputs[i];
+            int next = 0;
+            IntcodeMachine.State state;
+            while (profiler.getInstructions() < 2_000_000 && (state = machine.run()) != IntcodeMachine.State.HALTED) {
+                if (state == IntcodeMachine.State.NEEDS_INPUT) {
+                    machine.input(input[next++ % input.length]);
+                }
+            }
+            BitSet executed = new BitSet();
+            for (int address = 0; address < program.size(); address++) {
+                if (profiler.getHits(address) > 0) {
+                    executed.set(address);
+                }
+            }
+            for (int address = executed.nextSetBit(0); address >= 0; address = executed.nextSetBit(address + 1)) {
+                assertThat(analysis.getInstruction(address)).as("day %s address %d", day, address).isNotNull();
+            }
+            assertThat(analysis.disassemble()).contains("hlt");
+        }
+    }
+}
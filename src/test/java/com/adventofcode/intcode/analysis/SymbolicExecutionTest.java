@@ -0,0 +1,51 @@
+package com.adventofcode.intcode.analysis;
+
+import com.adventofcode.Intcode;
+import com.adventofcode.intcode.IntcodeProgram;
+import com.adventofcode.utils.FileUtils;
+import org.testng.annotations.Test;
+
+import java.io.IOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class SymbolicExecutionTest {
+    @Test
+    void testDay02ClosedForm() throws IOException {
+        IntcodeProgram program = IntcodeProgram.parse(FileUtils.readLine("/day/2/input"));
+        LinearForm form = SymbolicExecution.closedForm(program, 0, 1, 2).orElseThrow();
+        for (long noun = 1; noun < 100; noun += 7) {
+            for (long verb = 1; verb < 100; verb += 11) {
+                assertThat(form.evaluate(noun, verb)).isEqualTo(Intcode.intcode(program, noun, verb)[0]);
+            }
+        }
+        assertThat(form.evaluate(12, 2)).isEqualTo(3850704);
+        assertThat(form.solve(19690720, 100, 100)).hasValueSatisfying(values -> assertThat(values).containsExactly(67, 18));
+    }
+
+    @Test
+    void testLeavesTheLinearFragment() {
+        // Multiplies the two symbols.
+        assertThat(SymbolicExecution.closedForm(IntcodeProgram.parse("2,5,6,0,99,0,0"), 0, 5, 6)).isEmpty();
+        // Branches on the symbol.
+        assertThat(SymbolicExecution.closedForm(IntcodeProgram.parse("1005,7,6,1101,1,1,0,99"), 0, 7)).isEmpty();
+        // Writes through it.
+        assertThat(SymbolicExecution.closedForm(IntcodeProgram.parse("1101,1,1,0,99"), 0, 3)).isEmpty();
+        // Reads through it and keeps the unknown value.
+        assertThat(SymbolicExecution.closedForm(IntcodeProgram.parse("1,5,5,0,99,0"), 0, 1)).isEmpty();
+    }
+
+    @Test
+    void testSolveModulo() {
+        // 10 - 4 * x0
+        LinearForm form = SymbolicExecution.closedForm(IntcodeProgram.parse("1002,9,-4,9,1001,9,10,0,99,0"), 0, 9).orElseThrow();
+        assertThat(form.toString()).isEqualTo("10 + -4 * x0");
+        assertThat(form.solve(-2, 10)).hasValueSatisfying(values -> assertThat(values).containsExactly(3));
+        assertThat(form.solve(-3, 10)).isEmpty();
+        assertThat(form.solve(-30, 10)).isEmpty();
+        // 3 * x0 wraps around: -1 is reached, 1 would need the inverse of 3 modulo 2^64, past any long.
+        LinearForm triple = SymbolicExecution.closedForm(IntcodeProgram.parse("102,3,5,0,99,0"), 0, 5).orElseThrow();
+        assertThat(triple.solve(-1, Long.MAX_VALUE)).hasValueSatisfying(values -> assertThat(triple.evaluate(values)).isEqualTo(-1));
+        assertThat(triple.solve(1, Long.MAX_VALUE)).isEmpty();
+    }
+}